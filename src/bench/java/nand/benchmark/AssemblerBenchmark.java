@@ -0,0 +1,81 @@
+package nand.benchmark;
+
+import nand.assembler.HackAssembler;
+import nand.assembler.process.Code;
+import nand.assembler.process.InstructionType;
+import nand.assembler.process.Parser;
+import nand.workload.WorkloadGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the assembler on in-memory source, so no file system time is measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class AssemblerBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int instructions;
+
+    @Param({"1000"})
+    public int variables;
+
+    private String source;
+    private final Code code = new Code();
+
+    @Setup
+    public void setUp() {
+        source = new WorkloadGenerator(BenchmarkFiles.SEED).assembly(instructions, variables);
+    }
+
+    /**
+     * Parser alone: reading lines and splitting instructions into parts
+     */
+    @Benchmark
+    public void parse(Blackhole blackhole) throws Exception {
+        Parser parser = Parser.ofText(source);
+
+        while (parser.hasMoreLines()) {
+            parser.advance(false);
+            if (parser.instructionType() == InstructionType.C_INSTRUCTION) {
+                blackhole.consume(parser.dest());
+                blackhole.consume(parser.comp());
+                blackhole.consume(parser.jump());
+            } else {
+                blackhole.consume(parser.symbolHash());
+            }
+        }
+    }
+
+    /**
+     * Parser and Code: encoding C instructions and numeric A instructions, without symbol resolution
+     */
+    @Benchmark
+    public void encode(Blackhole blackhole) throws Exception {
+        Parser parser = Parser.ofText(source);
+
+        while (parser.hasMoreLines()) {
+            parser.advance(true);
+            if (parser.instructionType() == InstructionType.C_INSTRUCTION) {
+                blackhole.consume(code.getCWord(parser.comp(), parser.dest(), parser.jump()));
+            } else if (parser.constant() >= 0) {
+                blackhole.consume(code.getAWord(parser.constant()));
+            }
+        }
+    }
+
+    /**
+     * Whole assembler including the symbol table, up to the ROM image
+     */
+    @Benchmark
+    public Object assemble() throws Exception {
+        return HackAssembler.assemble(source);
+    }
+}
@@ -0,0 +1,28 @@
+package nand.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Temporary directories for benchmarks that need their input on disk
+ */
+public class BenchmarkFiles {
+
+    public static final long SEED = 2023; // Every benchmark generates its input from the same seed
+
+    private BenchmarkFiles() {}
+
+    /**
+     * Removes a temporary directory made for a benchmark, with everything written into it
+     */
+    public static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package nand.benchmark;
+
+import nand.jack_analyzer.process.JackTokenizer;
+import nand.workload.WorkloadGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the Jack front end: tokenizer, analyzer engine writing XML and compiler engine reading it back
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class JackBenchmark {
+
+    @Param({"8", "64"})
+    public int classes;
+
+    @Param({"20"})
+    public int functionsPerClass;
+
+    private Path directory;
+    private ArrayList<String> xmlSources;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("jack-benchmark");
+        WorkloadGenerator.write(new WorkloadGenerator(BenchmarkFiles.SEED).jackProgram(classes, functionsPerClass, 4), directory);
+
+        // XML files the compiler engine reads, written once by the analyzer
+        xmlSources = analyze().fileNames;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(directory);
+    }
+
+    @Benchmark
+    public JackTokenizer tokenize() throws IOException {
+        JackTokenizer tokenizer = new JackTokenizer(directory.toString());
+
+        while (tokenizer.hasMoreLines()) {
+            tokenizer.tokenizeLine();
+        }
+        return tokenizer;
+    }
+
+    /**
+     * Analyzer engine including the tokenizer, as it needs the tokens of the whole directory
+     */
+    @Benchmark
+    public nand.jack_analyzer.process.CompilationEngine analyze() throws Exception {
+        nand.jack_analyzer.process.CompilationEngine engine = new nand.jack_analyzer.process.CompilationEngine(tokenize());
+        engine.compileAll();
+        return engine;
+    }
+
+    @Benchmark
+    public void compile() throws IOException {
+        new nand.jack_compiler.process.CompilationEngine(xmlSources, OutputStream.nullOutputStream()).compileAll();
+    }
+}
@@ -0,0 +1,169 @@
+package nand.benchmark;
+
+import nand.jack_compiler.process.VMWriter;
+import nand.vm_translator.VMTranslator;
+import nand.vm_translator.process.Code;
+import nand.vm_translator.process.Optimization;
+import nand.vm_translator.process.Parser;
+import nand.vm_translator.process.Peephole;
+import nand.vm_translator.process.command.Bytecode;
+import nand.vm_translator.process.command.Command;
+import nand.workload.WorkloadGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of VM code generation alone, of parsing text and bytecode, and of the whole translator over a directory
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class VMTranslatorBenchmark {
+
+    @Param({"8", "64"})
+    public int classes;
+
+    @Param({"20"})
+    public int functionsPerClass;
+
+    @Param({"", "peephole", "cache-top", "shared-calls,shared-comparisons"})
+    public String optimizations; // Labels of Optimization, separated by commas
+
+    private final Set<Optimization> optimizationSet = EnumSet.noneOf(Optimization.class);
+
+    private Path directory;
+    private Path bytecodeDirectory; // Same program as VM bytecode
+
+    // Commands of the program as the parser gives them, so generate() measures Code alone
+    private final List<Command> commands = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        for (String label : optimizations.split(",")) {
+            if (!label.isEmpty()) {
+                optimizationSet.add(Optimization.valueOfLabel(label));
+            }
+        }
+
+        directory = Files.createTempDirectory("vm-benchmark");
+        WorkloadGenerator.write(new WorkloadGenerator(BenchmarkFiles.SEED).vmProgram(classes, functionsPerClass, 4), directory);
+
+        Parser parser = new Parser(directory.toString());
+        while (parser.hasMoreLines()) {
+            parser.advance();
+            commands.add(parser.command());
+        }
+
+        bytecodeDirectory = Files.createTempDirectory("vmb-benchmark");
+        writeBytecode();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFiles.delete(directory);
+        BenchmarkFiles.delete(bytecodeDirectory);
+    }
+
+    /**
+     * Parser alone over the text files
+     */
+    @Benchmark
+    public int parseText() throws IOException {
+        return parse(directory);
+    }
+
+    /**
+     * Parser alone over the same program as bytecode
+     */
+    @Benchmark
+    public int parseBytecode() throws IOException {
+        return parse(bytecodeDirectory);
+    }
+
+    /**
+     * Code alone, generating assembly for the parsed commands the same way the translator does
+     */
+    @Benchmark
+    public StringBuilder generate() {
+        Code code = new Code(new StringBuilder(), optimizationSet);
+
+        if (optimizationSet.contains(Optimization.PEEPHOLE)) {
+            Peephole peephole = new Peephole(code);
+            for (Command command : commands) {
+                peephole.write(command);
+            }
+            peephole.flush();
+        } else {
+            for (Command command : commands) {
+                code.write(command);
+            }
+        }
+        return code.output();
+    }
+
+    /**
+     * Whole translator: parsing the files and writing assembly to a stream that discards it
+     */
+    @Benchmark
+    public void translate() throws Exception {
+        VMTranslator.translate(directory.toString(), OutputStream.nullOutputStream(), optimizationSet);
+    }
+
+    private static int parse(Path directory) throws IOException {
+        Parser parser = new Parser(directory.toString());
+        int count = 0;
+
+        while (parser.hasMoreLines()) {
+            parser.advance();
+            count += parser.command().index();
+        }
+        return count;
+    }
+
+    /**
+     * Writes the parsed commands into a .vmb file for each .vm file, as the Jack compiler would
+     */
+    private void writeBytecode() throws IOException {
+        VMWriter writer = null;
+        String fileName = null;
+
+        for (Command command : commands) {
+            if (!command.fileName().equals(fileName)) {
+                if (writer != null) {
+                    writer.close();
+                }
+                fileName = command.fileName();
+                String className = fileName.substring(0, fileName.length() - ".vm".length());
+                writer = new VMWriter(bytecodeDirectory.resolve(className + Bytecode.EXTENSION).toString(), true);
+            }
+
+            switch (command.type()) {
+                case C_ARITHMETIC -> writer.writeArithmetic(command.operation());
+                case C_PUSH -> writer.writePush(command.segment(), command.index());
+                case C_POP -> writer.writePop(command.segment(), command.index());
+                case C_LABEL -> writer.writeLabel(command.name());
+                case C_GOTO -> writer.writeGoto(command.name());
+                case C_IF -> writer.writeIf(command.name());
+                case C_FUNCTION -> writer.writeFunction(command.name(), command.index());
+                case C_CALL -> writer.writeCall(command.name(), command.index());
+                case C_RETURN -> writer.writeReturn();
+            }
+        }
+
+        if (writer != null) {
+            writer.close();
+        }
+    }
+}
@@ -1,13 +1,26 @@
 package nand;
 
 import nand.assembler.HackAssembler;
+import nand.assembler.process.OutputFormat;
 import nand.jack_analyzer.JackAnalyzer;
 import nand.jack_compiler.JackCompiler;
 import nand.vm_translator.VMTranslator;
+import nand.vm_translator.process.Inliner;
+import nand.vm_translator.process.Optimization;
 
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class Main {
     public static final int ASSEMBLER = 0;
@@ -15,6 +28,8 @@ public class Main {
     public static final int JACK_ANALYZER = 2;
     public static final int JACK_COMPILER = 3;
 
+    public static final String STANDARD_STREAM = "-"; // Input or output name for stdin/stdout
+
     public static void main(String[] args) {
         List<String> cmdArguments = Arrays.asList(args);
 
@@ -25,12 +40,26 @@ public class Main {
 
         String inputFile = "";
         String outputFile = "";
+        String outputFormat = OutputFormat.TEXT.label;
+        String optimizationList = "";
+        String inlineSize = String.valueOf(Inliner.DEFAULT_MAX_SIZE);
+        boolean formatChosen = false; // VM translator outputs machine code only if a format is asked for
+        boolean link = false;
+        boolean bytecode = false;
         int toolChosen = ASSEMBLER; // Runs as assembly by default
 
         for (int i = 0; i < cmdArguments.size(); i++){
             switch (cmdArguments.get(i)) {
                 case "-i", "--input" -> inputFile = i + 1 != cmdArguments.size() ? cmdArguments.get(i + 1) : "";
                 case "-o", "--output" -> outputFile = i + 1 != cmdArguments.size() ? cmdArguments.get(i + 1) : "";
+                case "-f", "--format" -> {
+                    outputFormat = i + 1 != cmdArguments.size() ? cmdArguments.get(i + 1) : "";
+                    formatChosen = true;
+                }
+                case "-O", "--optimize" -> optimizationList = i + 1 != cmdArguments.size() ? cmdArguments.get(i + 1) : "";
+                case "--inline-size" -> inlineSize = i + 1 != cmdArguments.size() ? cmdArguments.get(i + 1) : "";
+                case "-l", "--link" -> link = true;
+                case "-b", "--bytecode" -> bytecode = true;
                 case "vmTranslator" -> toolChosen = VM_TRANSLATOR;
                 case "jackAnalyzer" -> toolChosen = JACK_ANALYZER;
                 case "jackCompiler" -> toolChosen = JACK_COMPILER;
@@ -47,26 +76,98 @@ public class Main {
             return;
         }
 
+        if (OutputFormat.valueOfLabel(outputFormat) == null) {
+            System.out.printf("Unknown output format %s%n", outputFormat);
+            usage();
+            return;
+        }
+
+        Set<Optimization> optimizations = EnumSet.noneOf(Optimization.class);
+        for (String label : optimizationList.split(",")) {
+            if (label.isEmpty()) {
+                continue;
+            }
+            if (Optimization.valueOfLabel(label) == null) {
+                System.out.printf("Unknown optimization %s%n", label);
+                usage();
+                return;
+            }
+            optimizations.add(Optimization.valueOfLabel(label));
+        }
+
+        if (!inlineSize.matches("\\d+")) {
+            System.out.printf("Inline size %s is not a number%n", inlineSize);
+            usage();
+            return;
+        }
+
+        boolean streamInput = inputFile.equals(STANDARD_STREAM);
+        boolean streamOutput = outputFile.equals(STANDARD_STREAM);
+
+        // Standard output may be the translation itself, then messages go to standard error
+        PrintStream log = streamOutput ? System.err : System.out;
+
         try {
             switch (toolChosen) {
-                case ASSEMBLER: {
-                    System.out.println("Assembler translation started\r");
-                    HackAssembler.translate(inputFile, outputFile);
+                case ASSEMBLER -> {
+                    log.println("Assembler translation started\r");
+                    if (streamInput || streamOutput) {
+                        try (InputStream input = streamInput ? keepOpen(System.in) : new FileInputStream(inputFile);
+                             OutputStream output = streamOutput ? keepOpen(System.out) : new FileOutputStream(outputFile)) {
+                            HackAssembler.translate(input, output, OutputFormat.valueOfLabel(outputFormat));
+                        }
+                    } else {
+                        HackAssembler.translate(inputFile, outputFile, OutputFormat.valueOfLabel(outputFormat));
+                    }
                 }
-                case VM_TRANSLATOR: {
-                    System.out.println("VM code translation started\r");
-                    VMTranslator.translate(inputFile, outputFile);
+                case VM_TRANSLATOR -> {
+                    log.println("VM code translation started\r");
+                    if (link && streamInput) {
+                        System.err.println("Linking needs .vm files, not standard input");
+                        usage();
+                        return;
+                    } else if (link) {
+                        OutputFormat format = OutputFormat.valueOfLabel(outputFormat);
+                        if (streamOutput) {
+                            VMTranslator.link(inputFile, System.out, format, optimizations, Integer.parseInt(inlineSize));
+                        } else {
+                            VMTranslator.link(inputFile, outputFile, format, optimizations, Integer.parseInt(inlineSize));
+                        }
+                    } else if (formatChosen) {
+                        OutputFormat format = OutputFormat.valueOfLabel(outputFormat);
+                        if (streamInput) {
+                            try (OutputStream output = streamOutput ? keepOpen(System.out) : new FileOutputStream(outputFile)) {
+                                VMTranslator.assemble(System.in, output, format, optimizations, Integer.parseInt(inlineSize));
+                            }
+                        } else if (streamOutput) {
+                            VMTranslator.assemble(inputFile, System.out, format, optimizations, Integer.parseInt(inlineSize));
+                        } else {
+                            VMTranslator.assemble(inputFile, outputFile, format, optimizations, Integer.parseInt(inlineSize));
+                        }
+                    } else if (streamInput) {
+                        try (OutputStream output = streamOutput ? keepOpen(System.out) : new FileOutputStream(outputFile)) {
+                            VMTranslator.translate(System.in, output, optimizations, Integer.parseInt(inlineSize));
+                        }
+                    } else if (streamOutput) {
+                        VMTranslator.translate(inputFile, System.out, optimizations, Integer.parseInt(inlineSize));
+                    } else {
+                        VMTranslator.translate(inputFile, outputFile, optimizations, Integer.parseInt(inlineSize));
+                    }
                 }
-                case JACK_ANALYZER: {
-                    System.out.println("Jack analyzer started\r");
+                case JACK_ANALYZER -> {
+                    log.println("Jack analyzer started\r");
                     JackAnalyzer.translate(inputFile);
                 }
-                case JACK_COMPILER: {
-                    System.out.println("Jack compiler started\r");
-                    JackCompiler.translate(inputFile);
+                case JACK_COMPILER -> {
+                    log.println("Jack compiler started\r");
+                    JackCompiler.translate(inputFile, streamOutput ? System.out : null, bytecode);
                 }
+            }
 
-                System.out.printf("Translation ended. Output in file %s%n", outputFile);
+            if (streamOutput) {
+                log.println("Translation ended. Output in standard output");
+            } else {
+                log.printf("Translation ended. Output in file %s%n", outputFile);
             }
 
         } catch (FileNotFoundException e) {
@@ -78,6 +179,35 @@ public class Main {
         }
     }
 
+    /**
+     * Standard input as a stream that can be closed with the files, leaving standard input open
+     */
+    private static InputStream keepOpen(InputStream input) {
+        return new FilterInputStream(input) {
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Standard output as a stream that can be closed with the files. Closing only flushes it, so output written
+     * before a failure is not held back
+     */
+    private static OutputStream keepOpen(OutputStream output) {
+        return new FilterOutputStream(output) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
     private static void usage() {
         System.out.println("""
                     Assembler of Hack machine language translator, virtual machine code and jack compilation engine
@@ -86,15 +216,29 @@ public class Main {
                      
                     Arguments:
                         assembler
-                           [-i] | --input      : filename of input (.asm) file
-                           [-o] | --output     : filename of output (.hack) file
+                           [-i] | --input      : filename of input (.asm) file, - for standard input
+                           [-o] | --output     : filename of output (.hack) file, - for standard output
+                           [-f] | --format     : output format: hack (default), bin, ihex or logisim
                         vmTranslator
-                           [-i] | --input      : filename of input (.vm) file or folder containing them
-                           [-o] | --output     : filename of output (.asm) file
+                           [-i] | --input      : filename of input (.vm or .vmb) file or folder containing them, - for standard input
+                           [-o] | --output     : filename of output (.asm, or .hack with -f or -l) file, - for standard output
+                           [-f] | --format     : output machine code in this format instead, same formats as of assembler
+                           [-l] | --link       : output machine code, linked from an object (.hobj) next to each .vm file.
+                                                 Objects of files that did not change are reused
+                           [-O] | --optimize   : comma separated optimizations:
+                                                 shared-calls - one shared routine for calls and one for returns
+                                                 shared-comparisons - one shared routine for each of eq, gt and lt
+                                                 peephole - rewrite short command patterns, like constant arithmetic
+                                                 cache-top - keep the top of the stack in D between commands
+                                                 dead-functions - leave out functions Sys.init never calls
+                                                 inline - replace calls of small functions without calls and jumps by their body
+                                | --inline-size : longest function body inline replaces a call with, in commands (default 8)
                         jackAnalyzer
                            [-i] | --input      : filename of input (.jack) file or folder containing them
                         jackCompiler
                            [-i] | --input      : filename of input (.jack) file or folder containing them
+                           [-o] | --output     : - to write VM code of all classes to standard output instead of .vm files
+                           [-b] | --bytecode   : write binary VM bytecode (.vmb) instead of text, read by vmTranslator
                            
                            -h   | --help       : display this help message
                     """);
@@ -1,62 +1,93 @@
 package nand.assembler;
 
 import nand.assembler.process.*;
+import nand.io.LineReader;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.List;
 
 public class HackAssembler {
     final static public int MAX_MEMORY_SIZE = 32767;
 
-    public static void translate(String inputFile, String outputFile) throws Exception {
-        Parser parser = new Parser(inputFile);
-        Code code = new Code();
-        SymbolTable symbolTable = new SymbolTable();
+    // Sources longer than this are split into chunks of this size and assembled in parallel
+    final static public int PARALLEL_CHUNK_SIZE = 1 << 18;
 
-        BufferedWriter outputWriter = new BufferedWriter(new FileWriter(outputFile));
+    public static void translate(String inputFile, String outputFile) throws Exception {
+        translate(inputFile, outputFile, OutputFormat.TEXT);
+    }
 
-        // Loop through all lines to save locations of L_INSTRUCTIONs
-        while (parser.hasMoreLines()) {
-            parser.advance(false);
+    public static void translate(String inputFile, String outputFile, OutputFormat format) throws Exception {
+        RomImage rom = assemble(LineReader.open(inputFile));
 
-            if (parser.instructionType() == InstructionType.L_INSTRUCTION) {
-                if (!symbolTable.containsVariable(parser.symbol())) {
-                    symbolTable.addLineEntry(parser.symbol(), parser.lineIndex);
-                }
-            }
-        }
-
-        // Reset parser to the beginning of a file
-        parser.reset();
+        // Words are turned into the output format only here
+        new RomWriter().write(rom.words, format, outputFile);
+    }
 
-        // Loop through all lines to translate to binary
-        while (parser.hasMoreLines()) {
-            parser.advance(true);
-            String word;
+    /**
+     * Assembles a program read from the input stream and writes it to the output stream. Streams are not closed.
+     * Only the line being read and the ROM are kept in memory
+     */
+    public static void translate(InputStream input, OutputStream output, OutputFormat format) throws Exception {
+        RomImage rom = assemble(LineReader.of(input));
 
-            if (parser.instructionType() == InstructionType.C_INSTRUCTION) {
-                 word = code.getCWord(parser.comp(), parser.dest(), parser.jump());
+        new RomWriter().write(rom.words, format, Channels.newChannel(output));
+        output.flush();
+    }
 
-            } else { // A_INSTRUCTION
-                try {
-                    // Assumes the A instruction points to number (e.g. @314)
-                    word = code.getAWord(Integer.parseInt(parser.symbol()));
+    /**
+     * Assembles a program held in memory, without touching the disk
+     *
+     * @param source Assembly text
+     */
+    public static RomImage assemble(CharSequence source) throws Exception {
+        return assemble(LineReader.of(source));
+    }
 
-                } catch (NumberFormatException e) {
-                    // Actually the A instruction points to symbol (e.g. @LOOP)
+    /**
+     * Assembles a program read from the reader
+     */
+    public static RomImage assemble(Reader source) throws Exception {
+        return assemble(new Parser(source));
+    }
 
-                    if (!symbolTable.containsVariable(parser.symbol())) {
-                        // Creates a new entry in symbol table
-                        symbolTable.addEntry(parser.symbol());
-                    }
+    /**
+     * Assembles UTF-8 encoded program from remaining bytes of the buffer
+     */
+    public static RomImage assemble(ByteBuffer source) throws Exception {
+        return assemble(LineReader.of(source));
+    }
 
-                    word = code.getAWord(symbolTable.getAddress(parser.symbol()));
-                }
-            }
+    /**
+     * Assembles lines of any source. Large sources that can be split are assembled in parallel
+     */
+    public static RomImage assemble(LineReader source) throws Exception {
+        List<LineReader> chunks = source.split(PARALLEL_CHUNK_SIZE);
 
-            outputWriter.write(String.format("%s\n", word));
+        if (chunks.size() > 1) {
+            return ParallelAssembler.assemble(chunks);
         }
+        return assemble(new Parser(source));
+    }
+
+    /**
+     * Assembles a part of a program held in memory into a relocatable object, to be linked with other parts
+     *
+     * @param source Assembly text
+     * @param tag How the object was made, kept in it as it is
+     */
+    public static ObjectFile assembleObject(CharSequence source, String tag) throws Exception {
+        RomBuilder rom = new RomBuilder(true);
+        rom.add(source);
+        return rom.buildObject(tag);
+    }
 
-        outputWriter.close();
+    private static RomImage assemble(Parser parser) throws Exception {
+        RomBuilder rom = new RomBuilder();
+        rom.add(parser);
+        return rom.build();
     }
 }
@@ -0,0 +1,54 @@
+package nand.assembler;
+
+import nand.assembler.process.Code;
+import nand.assembler.process.SymbolTable;
+
+import java.util.List;
+
+/**
+ * Puts relocatable objects together into one program, placing them one after another in ROM.
+ * Output is identical to assembling the concatenated sources of the objects in HackAssembler
+ */
+public class Linker {
+
+    public static RomImage link(List<ObjectFile> objects) throws Exception {
+        SymbolTable symbolTable = new SymbolTable();
+        int[] bases = new int[objects.size()];
+        int base = 0;
+
+        // Labels are added in object order, so the first definition of a symbol wins like in a single pass
+        for (int i = 0; i < objects.size(); i++) {
+            ObjectFile object = objects.get(i);
+            bases[i] = base;
+            base += object.words.length;
+
+            for (int symbol = 0; symbol < object.symbols.length; symbol++) {
+                if (object.labelOffsets[symbol] != SymbolTable.UNRESOLVED) {
+                    symbolTable.addLabelEntry(object.symbols[symbol], bases[i] + object.labelOffsets[symbol]);
+                }
+            }
+        }
+
+        // Remaining symbols are variables. Walking relocations in object order allocates them in order of first use
+        short[] words = new short[base];
+        Code code = new Code();
+
+        for (int i = 0; i < objects.size(); i++) {
+            ObjectFile object = objects.get(i);
+            System.arraycopy(object.words, 0, words, bases[i], object.words.length);
+
+            // Every symbol of the object is looked up once, however many times it is used
+            int[] ids = new int[object.symbols.length];
+            for (int symbol = 0; symbol < ids.length; symbol++) {
+                ids[symbol] = symbolTable.getId(object.symbols[symbol], SymbolTable.hash(object.symbols[symbol]));
+            }
+
+            for (int r = 0; r < object.relocations.length; r += 2) {
+                int address = symbolTable.resolveOrAllocateById(ids[object.relocations[r]]);
+                words[bases[i] + object.relocations[r + 1]] = (short) code.getAWord(address);
+            }
+        }
+
+        return new RomImage(words, symbolTable);
+    }
+}
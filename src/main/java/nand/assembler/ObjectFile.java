@@ -0,0 +1,94 @@
+package nand.assembler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Relocatable result of assembling one part of a program, put together with other parts by Linker.
+ * Words are encoded as they would be at address 0, except A instructions of symbols, which are left 0 and listed
+ * as relocations. Symbols that are always defined (R0-R15, SP, SCREEN...) are encoded in place
+ */
+public class ObjectFile {
+    public static final String EXTENSION = ".hobj";
+
+    private static final int MAGIC = 0x484F424A; // "HOBJ"
+
+    public final String tag; // How the object was made, so tools that reuse it can tell whether it still fits
+    public final short[] words;
+    public final String[] symbols; // Symbols defined or used, in order of their first appearance
+    public final int[] labelOffsets; // Word index each symbol labels, SymbolTable.UNRESOLVED if it is not a label here
+    public final int[] relocations; // Pairs of symbol index and index of the word that gets its address, in order of use
+
+    public ObjectFile(String tag, short[] words, String[] symbols, int[] labelOffsets, int[] relocations) {
+        this.tag = tag;
+        this.words = words;
+        this.symbols = symbols;
+        this.labelOffsets = labelOffsets;
+        this.relocations = relocations;
+    }
+
+    /**
+     * Writes the object to a file, replacing its content
+     */
+    public void write(String file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeUTF(tag);
+
+            output.writeInt(words.length);
+            for (short word : words) {
+                output.writeShort(word);
+            }
+
+            output.writeInt(symbols.length);
+            for (int i = 0; i < symbols.length; i++) {
+                output.writeUTF(symbols[i]);
+                output.writeInt(labelOffsets[i]);
+            }
+
+            output.writeInt(relocations.length);
+            for (int relocation : relocations) {
+                output.writeInt(relocation);
+            }
+        }
+    }
+
+    /**
+     * Reads an object written by write()
+     *
+     * @throws IOException File is not an object file, or failed reading it
+     */
+    public static ObjectFile read(String file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException(String.format("%s is not an object file", file));
+            }
+            String tag = input.readUTF();
+
+            short[] words = new short[input.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = input.readShort();
+            }
+
+            int symbolCount = input.readInt();
+            String[] symbols = new String[symbolCount];
+            int[] labelOffsets = new int[symbolCount];
+            for (int i = 0; i < symbolCount; i++) {
+                symbols[i] = input.readUTF();
+                labelOffsets[i] = input.readInt();
+            }
+
+            int[] relocations = new int[input.readInt()];
+            for (int i = 0; i < relocations.length; i++) {
+                relocations[i] = input.readInt();
+            }
+
+            return new ObjectFile(tag, words, symbols, labelOffsets, relocations);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package nand.assembler;
+
+import nand.assembler.process.*;
+import nand.io.LineReader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Assembles a large source split into line ranges (chunks) on the fork/join pool.
+ * Output is identical to the single-pass assembler in HackAssembler
+ */
+class ParallelAssembler {
+
+    public static RomImage assemble(List<LineReader> sources) throws Exception {
+        List<Chunk> chunks = new ArrayList<>();
+        sources.forEach(source -> chunks.add(new Chunk(source)));
+
+        // Labels and instruction count of every chunk
+        runInParallel(chunks, Chunk::scan);
+
+        // Chunk base addresses are a prefix sum of instruction counts.
+        // Labels are added in source order, so the first definition of a symbol wins like in a single pass
+        SymbolTable symbolTable = new SymbolTable();
+        int base = 0;
+        for (Chunk chunk : chunks) {
+            chunk.base = base;
+            base += chunk.instructionCount;
+
+            for (int i = 0; i < chunk.labels.size(); i++) {
+                symbolTable.addLabelEntry(chunk.labels.get(i), chunk.base + chunk.labelOffsets.get(i));
+            }
+        }
+
+        // Every chunk writes its own range of ROM. Symbol table is only read meanwhile
+        short[] words = new short[base];
+        runInParallel(chunks, chunk -> chunk.encode(symbolTable, words));
+
+        // Remaining symbols are variables. Walking chunks in source order allocates them in order of first use
+        Code code = new Code();
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.variables.size(); i++) {
+                words[chunk.variableIndices.get(i)] = (short) code.getAWord(symbolTable.resolveOrAllocate(chunk.variables.get(i)));
+            }
+        }
+
+        return new RomImage(words, symbolTable);
+    }
+
+    /**
+     * Runs the step for all chunks on the fork/join pool. Failure of the earliest chunk in source order is rethrown,
+     * which is the same failure a single pass would report
+     */
+    private static void runInParallel(List<Chunk> chunks, ChunkStep step) throws Exception {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    step.run(chunk);
+                } catch (Exception e) {
+                    chunk.failure = e;
+                }
+            }));
+        }
+
+        ForkJoinTask.invokeAll(tasks);
+
+        for (Chunk chunk : chunks) {
+            if (chunk.failure != null) {
+                throw chunk.failure;
+            }
+        }
+    }
+
+    private interface ChunkStep {
+        void run(Chunk chunk) throws Exception;
+    }
+
+    private static class Chunk {
+        private final LineReader source;
+        private Exception failure;
+
+        private int instructionCount = 0;
+        private int base = 0; // ROM address of the first instruction
+        private final List<String> labels = new ArrayList<>();
+        private final List<Integer> labelOffsets = new ArrayList<>(); // Offsets from base, matching labels
+
+        // Uses of symbols that are not labels in source order, and ROM indices of those uses
+        private final List<String> variables = new ArrayList<>();
+        private final List<Integer> variableIndices = new ArrayList<>();
+
+        private Chunk(LineReader source) {
+            this.source = source;
+        }
+
+        private void scan() throws Exception {
+            Parser parser = new Parser(source);
+
+            while (parser.hasMoreLines()) {
+                parser.advance(false);
+
+                if (parser.instructionType() == InstructionType.L_INSTRUCTION) {
+                    labels.add(parser.symbol().toString());
+                    labelOffsets.add(instructionCount);
+                } else {
+                    instructionCount += 1;
+                }
+            }
+        }
+
+        private void encode(SymbolTable symbolTable, short[] words) throws Exception {
+            source.reset();
+            Parser parser = new Parser(source);
+            Code code = new Code();
+            int index = base;
+
+            while (parser.hasMoreLines()) {
+                parser.advance(false);
+
+                switch (parser.instructionType()) {
+                    case C_INSTRUCTION -> words[index++] = (short) code.getCWord(parser.comp(), parser.dest(), parser.jump());
+                    case A_INSTRUCTION -> {
+                        int constant = parser.constant();
+
+                        if (constant >= 0) {
+                            words[index++] = (short) code.getAWord(constant);
+                        } else {
+                            int address = symbolTable.getAddress(parser.symbol(), parser.symbolHash());
+
+                            if (address != SymbolTable.UNRESOLVED) {
+                                words[index++] = (short) code.getAWord(address);
+                            } else {
+                                variables.add(parser.symbol().toString());
+                                variableIndices.add(index++);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
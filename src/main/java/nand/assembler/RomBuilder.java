@@ -0,0 +1,245 @@
+package nand.assembler;
+
+import nand.assembler.process.*;
+
+import java.util.Arrays;
+
+/**
+ * Single pass assembler that takes a program in pieces, encoding each piece as it comes.
+ * A piece is only read during add(), so the buffer it is in can be reused for the next one.
+ * Instructions can also be added one by one, without any text, by a generator that knows what it makes
+ */
+public class RomBuilder {
+    // Default symbols (R0-R15, SP, SCREEN...), for pieces encoded without a ROM
+    private static final SymbolTable DEFAULT_SYMBOLS = new SymbolTable();
+
+    private final Code code = new Code();
+    private final SymbolTable symbolTable = new SymbolTable();
+    private final int defaultSymbols = symbolTable.size();
+    private final boolean relocatable;
+
+    private short[] words = new short[1024];
+    private int wordCount = 0;
+
+    // Uses of symbols that had no address yet, as pairs of symbol id and index of the word to patch.
+    // Kept in order of use, which is the order variables get their memory locations
+    private int[] fixups = new int[256];
+    private int fixupCount = 0;
+
+    /**
+     * Builds a whole program with build()
+     */
+    public RomBuilder() {
+        this(false);
+    }
+
+    /**
+     * @param relocatable Builds a relocatable object with buildObject() instead, in which every symbol but the
+     *                    default ones is left to the linker
+     */
+    public RomBuilder(boolean relocatable) {
+        this.relocatable = relocatable;
+    }
+
+    /**
+     * Encodes whole lines of assembly, following the ones added before
+     */
+    public void add(CharSequence assembly) throws Exception {
+        add(Parser.ofText(assembly));
+    }
+
+    /**
+     * Encodes all the remaining lines of the parser, following the ones added before
+     */
+    public void add(Parser parser) throws Exception {
+        // Each instruction is encoded as soon as it is read
+        while (parser.hasMoreLines()) {
+            parser.advance(false);
+
+            switch (parser.instructionType()) {
+                // Label points to the next instruction
+                case L_INSTRUCTION -> symbolTable.addLabelEntry(parser.symbol(), parser.symbolHash(), wordCount);
+                case C_INSTRUCTION -> addWord(code.getCWord(parser.comp(), parser.dest(), parser.jump()));
+                case A_INSTRUCTION -> {
+                    int constant = parser.constant();
+
+                    if (constant >= 0) {
+                        // The A instruction points to number (e.g. @314)
+                        addWord(code.getAWord(constant));
+                    } else {
+                        // The A instruction points to symbol (e.g. @LOOP)
+                        addSymbol(parser.symbol(), parser.symbolHash());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes the fragment, following the instructions added before
+     */
+    public void add(Fragment fragment) throws Exception {
+        for (int item : fragment.items) {
+            switch (item & ~Fragment.INDEX) {
+                case Fragment.SYMBOL -> addSymbol(fragment.names[item & Fragment.INDEX], fragment.hashes[item & Fragment.INDEX]);
+                case Fragment.LABEL -> symbolTable.addLabelEntry(fragment.names[item & Fragment.INDEX], fragment.hashes[item & Fragment.INDEX], wordCount);
+                default -> addWord(item);
+            }
+        }
+    }
+
+    /**
+     * Encodes '@address' of a number
+     */
+    public void addAddress(int address) throws Exception {
+        addWord(code.getAWord(address));
+    }
+
+    /**
+     * Encodes '@symbol'. Symbol of digits only is a number, as it is in assembly text
+     */
+    public void addSymbol(CharSequence symbol) throws Exception {
+        int constant = Parser.constant(symbol, 0, symbol.length());
+
+        if (constant >= 0) {
+            addAddress(constant);
+        } else {
+            addSymbol(symbol, SymbolTable.hash(symbol));
+        }
+    }
+
+    /**
+     * Adds '(label)', pointing to the next instruction
+     */
+    public void addLabel(CharSequence label) {
+        symbolTable.addLabelEntry(label, SymbolTable.hash(label), wordCount);
+    }
+
+    /**
+     * Ends the program. Symbols still without address are variables, allocated in order of first use
+     */
+    public RomImage build() throws Exception {
+        for (int i = 0; i < fixupCount; i += 2) {
+            words[fixups[i + 1]] = (short) code.getAWord(symbolTable.resolveOrAllocateById(fixups[i]));
+        }
+        fixupCount = 0;
+
+        return new RomImage(Arrays.copyOf(words, wordCount), symbolTable);
+    }
+
+    /**
+     * Ends a relocatable part of a program, to be linked with other parts
+     *
+     * @param tag How the object was made, kept in it as it is
+     */
+    public ObjectFile buildObject(String tag) {
+        // Only symbols added after the default ones belong to the object. Their labels get offsets in it
+        String[] symbols = new String[symbolTable.size() - defaultSymbols];
+        int[] labelOffsets = new int[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = symbolTable.getNameById(defaultSymbols + i);
+            labelOffsets[i] = symbolTable.getAddressById(defaultSymbols + i);
+        }
+
+        int[] relocations = Arrays.copyOf(fixups, fixupCount);
+        for (int i = 0; i < relocations.length; i += 2) {
+            relocations[i] -= defaultSymbols;
+        }
+
+        return new ObjectFile(tag, Arrays.copyOf(words, wordCount), symbols, labelOffsets, relocations);
+    }
+
+    /**
+     * Encodes a fixed piece of assembly without a ROM, so it can be added many times without being read again
+     *
+     * @throws IllegalArgumentException Assembly has a number too large for an A instruction
+     */
+    public static Fragment fragment(CharSequence assembly) {
+        Parser parser = Parser.ofText(assembly);
+        Code code = new Code();
+        int[] items = new int[16];
+        String[] names = new String[4];
+        int[] hashes = new int[4];
+        int itemCount = 0;
+        int nameCount = 0;
+
+        try {
+            while (parser.hasMoreLines()) {
+                parser.advance(false);
+
+                if (itemCount == items.length) {
+                    items = Arrays.copyOf(items, items.length * 2);
+                }
+                if (nameCount == names.length) {
+                    names = Arrays.copyOf(names, names.length * 2);
+                    hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                }
+
+                int constant = parser.constant();
+                if (parser.instructionType() == InstructionType.C_INSTRUCTION) {
+                    items[itemCount++] = code.getCWord(parser.comp(), parser.dest(), parser.jump());
+                } else if (constant >= 0) {
+                    items[itemCount++] = code.getAWord(constant);
+                } else if (parser.instructionType() == InstructionType.A_INSTRUCTION
+                        && DEFAULT_SYMBOLS.getAddress(parser.symbol(), parser.symbolHash()) != SymbolTable.UNRESOLVED) {
+                    items[itemCount++] = code.getAWord(DEFAULT_SYMBOLS.getAddress(parser.symbol(), parser.symbolHash()));
+                } else {
+                    // Labels and other symbols only get their addresses in the ROM the fragment is added to
+                    boolean label = parser.instructionType() == InstructionType.L_INSTRUCTION;
+                    names[nameCount] = parser.symbol().toString();
+                    hashes[nameCount] = parser.symbolHash();
+                    items[itemCount++] = (label ? Fragment.LABEL : Fragment.SYMBOL) | nameCount++;
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+
+        return new Fragment(Arrays.copyOf(items, itemCount), Arrays.copyOf(names, nameCount), Arrays.copyOf(hashes, nameCount));
+    }
+
+    /**
+     * Fixed piece of assembly, encoded except for its labels and the symbols that are not default ones
+     */
+    public static final class Fragment {
+        private static final int SYMBOL = 1 << 16;
+        private static final int LABEL = 2 << 16;
+        private static final int INDEX = 0xFFFF;
+
+        private final int[] items; // Instruction words, or SYMBOL or LABEL with the index of the name
+        private final String[] names;
+        private final int[] hashes;
+
+        private Fragment(int[] items, String[] names, int[] hashes) {
+            this.items = items;
+            this.names = names;
+            this.hashes = hashes;
+        }
+    }
+
+    private void addSymbol(CharSequence symbol, int hash) throws Exception {
+        int id = symbolTable.getId(symbol, hash);
+        int address = symbolTable.getAddressById(id);
+
+        // Relocatable object leaves addresses to the linker, even of labels defined before
+        if (relocatable ? id < defaultSymbols : address != SymbolTable.UNRESOLVED) {
+            addWord(code.getAWord(address));
+            return;
+        }
+
+        // Either a label defined further down or a variable. Patched at the end
+        if (fixupCount == fixups.length) {
+            fixups = Arrays.copyOf(fixups, fixups.length * 2);
+        }
+        fixups[fixupCount++] = id;
+        fixups[fixupCount++] = wordCount;
+        addWord(0);
+    }
+
+    private void addWord(int word) {
+        if (wordCount == words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        words[wordCount++] = (short) word;
+    }
+}
@@ -0,0 +1,16 @@
+package nand.assembler;
+
+import nand.assembler.process.SymbolTable;
+
+/**
+ * Result of assembling a program: instruction words in ROM order and the symbols they were resolved with
+ */
+public class RomImage {
+    public final short[] words;
+    public final SymbolTable symbolTable;
+
+    public RomImage(short[] words, SymbolTable symbolTable) {
+        this.words = words;
+        this.symbolTable = symbolTable;
+    }
+}
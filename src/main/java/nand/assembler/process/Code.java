@@ -1,9 +1,81 @@
 package nand.assembler.process;
 
+import java.util.Arrays;
+
 import static nand.assembler.HackAssembler.MAX_MEMORY_SIZE;
 
 public class Code {
 
+    /**
+     * Characters that can appear in a comp mnemonic. Each gets a 4-bit code (1 and up, 0 means no character),
+     * so a comp mnemonic of up to 3 characters packs into a 12-bit index of COMP_TABLE
+     */
+    private static final String COMP_ALPHABET = "01-!DAM+&|";
+    private static final byte[] COMP_CHAR_CODES = new byte[128];
+
+    /**
+     * a c c c c c c bits of each comp mnemonic indexed by its packed form, -1 for unknown mnemonics
+     */
+    private static final short[] COMP_TABLE = new short[1 << 12];
+
+    /**
+     * d d d bit of each dest register indexed by character, 0 for characters that are not registers
+     */
+    private static final byte[] DEST_TABLE = new byte[128];
+
+    /**
+     * j j j bits indexed by the two letters after 'J' of a jump mnemonic, 0 for unknown mnemonics
+     */
+    private static final byte[] JUMP_TABLE = new byte[26 * 26];
+
+    static {
+        for (int i = 0; i < COMP_ALPHABET.length(); i++) {
+            COMP_CHAR_CODES[COMP_ALPHABET.charAt(i)] = (byte) (i + 1);
+        }
+
+        Arrays.fill(COMP_TABLE, (short) -1);
+        addComp(0b0101010, "0");
+        addComp(0b0111111, "1");
+        addComp(0b0111010, "-1");
+        addComp(0b0001100, "D");
+        addComp(0b0110000, "A");
+        addComp(0b1110000, "M");
+        addComp(0b0001101, "!D");
+        addComp(0b0110001, "!A");
+        addComp(0b1110001, "!M");
+        addComp(0b0001111, "-D");
+        addComp(0b0110011, "-A");
+        addComp(0b1110011, "-M");
+        addComp(0b0011111, "D+1");
+        addComp(0b0110111, "A+1");
+        addComp(0b1110111, "M+1");
+        addComp(0b0001110, "D-1");
+        addComp(0b0110010, "A-1");
+        addComp(0b1110010, "M-1");
+        addComp(0b0000010, "D+A", "A+D");
+        addComp(0b1000010, "D+M", "M+D");
+        addComp(0b0010011, "D-A");
+        addComp(0b1010011, "D-M");
+        addComp(0b0000111, "A-D");
+        addComp(0b1000111, "M-D");
+        addComp(0b0000000, "D&A", "A&D");
+        addComp(0b1000000, "D&M", "M&D");
+        addComp(0b0010101, "D|A", "A|D");
+        addComp(0b1010101, "D|M", "M|D");
+
+        DEST_TABLE['A'] = 0b100;
+        DEST_TABLE['D'] = 0b010;
+        DEST_TABLE['M'] = 0b001;
+
+        addJump(0b001, "JGT");
+        addJump(0b010, "JEQ");
+        addJump(0b011, "JGE");
+        addJump(0b100, "JLT");
+        addJump(0b101, "JNE");
+        addJump(0b110, "JLE");
+        addJump(0b111, "JMP");
+    }
+
     /**
      * Responsible for instruction translation to binary
      */
@@ -13,114 +85,108 @@ public class Code {
      * A instruction in binary
      * 0 v v v v v v v v v v v v v v v v
      */
-    public String getAWord(Integer constant) throws Exception {
-        if (constant > MAX_MEMORY_SIZE) {
+    public int getAWord(int constant) throws Exception {
+        if (constant < 0 || constant > MAX_MEMORY_SIZE) {
             throw new Exception(String.format("Too large memory location: %s", constant));
         }
-        StringBuilder word = new StringBuilder();
-        String binary = Integer.toString(constant, 2);
-
-        word.append('0');
-        word.append("0".repeat(15 - binary.length())).append(binary);
 
-        return word.toString();
+        return constant;
     }
 
 
     /**
      * C instruction in binary
      * 1 1 1 a c c c c c c d d d j j j
+     *
+     * @param destInst Dest part or null if the instruction has none
+     * @param jumpInst Jump part or null if the instruction has none
      */
-    public String getCWord(String compInstr, String destInst, String jumpInst) {
-        String comp1 = comp(compInstr);
-        String dest = dest(destInst);
-        String jump = jump(jumpInst);
-        char comp0 = compFirst(compInstr);
-
-        StringBuilder word = new StringBuilder();
-
-        word.append("111");
-        word.append(comp0);
-        word.append(comp1);
-        word.append(dest);
-        word.append(jump);
-
-        return word.toString();
+    public int getCWord(CharSequence compInstr, CharSequence destInst, CharSequence jumpInst) {
+        return 0b111 << 13 | comp(compInstr) << 6 | dest(destInst) << 3 | jump(jumpInst);
     }
 
 
     /**
-     * Returns dest string of X's in   1 1 1 v v v v v v v X X X v v v
+     * Returns dest bits of X's in   1 1 1 v v v v v v v X X X v v v
      */
-    public String dest(String instruction) {
-        char[] destAr = {'0', '0', '0'};
+    public int dest(CharSequence instruction) {
+        if (instruction == null) {
+            return 0;
+        }
 
-        if (instruction != null) {
-            destAr[0] = instruction.contains("A") ? '1': '0';
-            destAr[1] = instruction.contains("D") ? '1': '0';
-            destAr[2] = instruction.contains("M") ? '1': '0';
+        int bits = 0;
+        for (int i = 0; i < instruction.length(); i++) {
+            char c = instruction.charAt(i);
+            int bit = c < 128 ? DEST_TABLE[c] : 0;
+
+            if (bit == 0) {
+                throw new UnsupportedOperationException(String.format("%s is an unknown dest part of an instruction", instruction));
+            }
+            bits |= bit;
         }
 
-        return new String(destAr);
+        return bits;
     }
 
     /**
-     * Returns jump string of X's in   1 1 1 v v v v v v v v v v X X X
+     * Returns jump bits of X's in   1 1 1 v v v v v v v v v v X X X
      */
-    public String jump(String instruction) {
+    public int jump(CharSequence instruction) {
         if (instruction == null) {
-            return "000";
+            return 0;
+        }
+
+        int bits = 0;
+        if (instruction.length() == 3 && instruction.charAt(0) == 'J') {
+            int index = jumpIndex(instruction.charAt(1), instruction.charAt(2));
+            bits = index < 0 ? 0 : JUMP_TABLE[index];
         }
 
-        return switch (instruction) {
-            case "JGT" -> "001";
-            case "JEQ" -> "010";
-            case "JGE" -> "011";
-            case "JLT" -> "100";
-            case "JNE" -> "101";
-            case "JLE" -> "110";
-            case "JMP" -> "111";
-            default ->
-                    throw new UnsupportedOperationException(String.format("%s is an unknown jump part of an instruction", instruction));
-        };
+        if (bits == 0) {
+            throw new UnsupportedOperationException(String.format("%s is an unknown jump part of an instruction", instruction));
+        }
+        return bits;
     }
 
     /**
-     * Returns comp first bit char of X in   1 1 1 X v v v v v v v v v v v v
+     * Returns comp bits including the first 'a' bit of X's in   1 1 1 X X X X X X X v v v v v v
      */
-    public char compFirst(String instruction) {
-        return instruction.contains("M") ? '1' : '0';
+    public int comp(CharSequence instruction) {
+        int index = instruction.length() <= 3 ? 0 : -1;
+
+        for (int i = 0; i < instruction.length() && index >= 0; i++) {
+            char c = instruction.charAt(i);
+            int charCode = c < 128 ? COMP_CHAR_CODES[c] : 0;
+
+            index = charCode == 0 ? -1 : index | charCode << (4 * i);
+        }
+
+        int bits = index < 0 ? -1 : COMP_TABLE[index];
+        if (bits < 0) {
+            throw new UnsupportedOperationException(String.format("%s is an unknown comp part of an instruction", instruction));
+        }
+        return bits;
     }
 
-    /**
-     * Returns comp string of X's in   1 1 1 v X X X X X X v v v v v v
-     */
-    public String comp(String instruction) {
-        if (instruction == null) {
-            return "000000";
+
+    private static void addComp(int bits, String... mnemonics) {
+        for (String mnemonic : mnemonics) {
+            int index = 0;
+            for (int i = 0; i < mnemonic.length(); i++) {
+                index |= COMP_CHAR_CODES[mnemonic.charAt(i)] << (4 * i);
+            }
+            COMP_TABLE[index] = (short) bits;
         }
+    }
 
-        return switch (instruction) {
-            case "0"            -> "101010";
-            case "1"            -> "111111";
-            case "-1"           -> "111010";
-            case "D"            -> "001100";
-            case "M", "A"       -> "110000";
-            case "!D"           -> "001101";
-            case "!M", "!A"     -> "110001";
-            case "-D"           -> "001111";
-            case "-M", "-A"     -> "110011";
-            case "D+1"          -> "011111";
-            case "A+1", "M+1"   -> "110111";
-            case "D-1"          -> "001110";
-            case "A-1", "M-1"   -> "110010";
-            case "D+M", "D+A", "M+D", "A+D" -> "000010";
-            case "D-M", "D-A"   -> "010011";
-            case "M-D", "A-D"   -> "000111";
-            case "D&M", "D&A", "M&D", "A&D" -> "000000";
-            case "D|M", "D|A", "M|D", "A|D" -> "010101";
-            default ->
-                    throw new UnsupportedOperationException(String.format("%s is an unknown comp part of an instruction", instruction));
-        };
+    private static void addJump(int bits, String mnemonic) {
+        JUMP_TABLE[jumpIndex(mnemonic.charAt(1), mnemonic.charAt(2))] = (byte) bits;
+    }
+
+    private static int jumpIndex(char first, char second) {
+        if (first < 'A' || first > 'Z' || second < 'A' || second > 'Z') {
+            return -1;
+        }
+        return (first - 'A') * 26 + (second - 'A');
     }
 }
@@ -0,0 +1,26 @@
+package nand.assembler.process;
+
+/**
+ * Format of the assembled ROM file
+ */
+public enum OutputFormat {
+    TEXT("hack"), // One word per line as 16 binary digits, like nand2tetris tools expect
+    BINARY("bin"), // Raw big-endian 16-bit words
+    INTEL_HEX("ihex"), // Intel HEX records, byte addressed
+    LOGISIM("logisim"); // Logisim "v2.0 raw" memory image
+
+    public final String label;
+
+    OutputFormat(String label) {
+        this.label = label;
+    }
+
+    public static OutputFormat valueOfLabel(String label) {
+        for (OutputFormat e : values()) {
+            if (e.label.equals(label)) {
+                return e;
+            }
+        }
+        return null;
+    }
+}
@@ -2,90 +2,132 @@ package nand.assembler.process;
 
 import static nand.assembler.process.InstructionType.*;
 
+import nand.io.LineReader;
+import nand.io.TextSlice;
+
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.ArrayList;
-import java.util.List;
-import java.io.FileNotFoundException;
-import java.io.File;
-import java.util.Objects;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 
 
 public class Parser {
 
-    private RandomAccessFile asmFile;
+    private final LineReader asmFile;
 
-    private String currentLine = ""; // Current line content
+    private CharSequence currentLine = ""; // Current line content, a view valid until the next line is read
     public int lineIndex = 0; // Current line number
 
-    private List<String> lineParts = new ArrayList<>();
+    private boolean lineReady = false; // Next significant line is already scanned by hasMoreLines()
+
+    /**
+     * Parts of the current line found by the scanner, stored as [start, end) offsets in currentLine
+     * Absent dest or jump part is marked with start of -1
+     */
+    private InstructionType instructionType;
+    private int symbolStart, symbolEnd, symbolHash;
+    private String symbolName; // Decoded symbol of a line read as bytes, if it is not ASCII. Otherwise null
+    private int destStart, destEnd;
+    private int compStart, compEnd;
+    private int jumpStart, jumpEnd;
+
+    // Views returned by symbol(), dest(), comp() and jump(). Reused for every line
+    private final TextSlice symbol = new TextSlice();
+    private final TextSlice dest = new TextSlice();
+    private final TextSlice comp = new TextSlice();
+    private final TextSlice jump = new TextSlice();
+
 
     /**
-     * REGEX pattern that is used to retrieve parts of each line
-     * Possible result groups:
-     * 1 - Symbol of A_INSTRUCTION
-     * 2 - Symbol of L_INSTRUCTION
-     * 3 - Instruction 'dest' part
-     * 4 - Instruction 'comp' part
-     * 5 - N/A
-     * 6 - Instruction 'jump' part
-     * 7 - Comment in line
+     * Parses a file
+     *
+     * @param textFileLocation Path of .asm file
+     * @throws IOException Failed opening the file results in an exception
      */
-    private final Pattern patternCompiled = Pattern.compile("@(\\S+)|\\((.*)\\)|(\\b(?!\\w*\\w+\\1)[ADM]+)?=?((?!\\w*(\\w)\\w*\\1)[!&|ADM\\-+10]+\\b);?(\\b(?!\\w*\\w+\\1)[JNMPELTG01]+)?");
+    public Parser(String textFileLocation) throws IOException {
+        this(LineReader.open(textFileLocation));
+    }
 
 
-    public Parser(String textFileLocation) {
-        try {
-            File file = new File(textFileLocation);
-            asmFile = new RandomAccessFile(file, "r");
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+    /**
+     * Parses assembly read fully from the reader
+     *
+     * @throws IOException Failed reading results in an exception
+     */
+    public Parser(Reader source) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+
+        for (int read = source.read(buffer); read >= 0; read = source.read(buffer)) {
+            text.append(buffer, 0, read);
         }
+        asmFile = LineReader.of(text);
+    }
+
+    /**
+     * Parses UTF-8 encoded assembly from the remaining bytes of the buffer. Buffer position is not changed
+     */
+    public Parser(ByteBuffer source) {
+        this(LineReader.of(source));
+    }
+
+    /**
+     * Parses lines of any source
+     */
+    public Parser(LineReader source) {
+        asmFile = source;
     }
 
     /**
-     * Reset the position of file to zero. Further reading will go from beginning
+     * Parses assembly held in memory
      *
-     * @throws IOException Failed seek to line results in an exception
+     * @param source Assembly text, is not copied
      */
-    public void reset() throws IOException {
-        asmFile.seek(0);
+    public static Parser ofText(CharSequence source) {
+        return new Parser(LineReader.of(source));
+    }
+
+    /**
+     * Reset the position to zero. Further reading will go from beginning
+     *
+     * @throws UnsupportedOperationException Source is a stream that can not be read again
+     */
+    public void reset() {
+        asmFile.reset();
         lineIndex = 0;
+        lineReady = false;
     }
 
     /**
-     * Checks whether there are lines in the file left
+     * Checks whether there are instructions in the file left. Empty and comment lines are skipped on the way
      *
-     * @throws IOException Failed reading from file results in an exception
+     * @throws IOException Failed reading from source results in an exception
      */
     public boolean hasMoreLines() throws IOException {
-        return asmFile.getFilePointer() < asmFile.length();
+        while (!lineReady) {
+            if (!asmFile.nextLine()) {
+                return false;
+            }
+
+            currentLine = asmFile.line();
+            lineReady = scan();
+        }
+
+        return true;
     }
 
     /**
      * Move to the next line in parser
      *
      * @param ignoreLInstruction Skips to next instruction if is true
-     * @throws IOException Failed next line reading results in an exception
+     * @throws IOException Failed reading from source results in an exception
      */
     public void advance(boolean ignoreLInstruction) throws IOException {
-        currentLine = asmFile.readLine().trim();
-
-        lineParts = patternCompiled
-            .matcher(currentLine)
-            .results()
-            .flatMap(mr -> IntStream.rangeClosed(1, mr.groupCount())
-                    .mapToObj(mr::group))
-            .collect(Collectors.toList());
-
-        // Go to next line if current is insignificant
-        if (Objects.equals(currentLine, "") || lineParts.isEmpty() || currentLine.startsWith("//") || (ignoreLInstruction && instructionType() == L_INSTRUCTION)) {
-            advance(ignoreLInstruction);
-            return;
-        }
+        do {
+            if (!hasMoreLines()) {
+                throw new IllegalStateException("Tried to advance past the end of input");
+            }
+            lineReady = false;
+        } while (ignoreLInstruction && instructionType == L_INSTRUCTION);
 
         lineIndex += 1;
     }
@@ -94,42 +136,207 @@ public class Parser {
      * Indicates current instruction type
      */
     public InstructionType instructionType() {
-        if (currentLine.matches("^@\\S+")) return A_INSTRUCTION;
-        if (currentLine.matches("\\(.*\\)")) return L_INSTRUCTION;
-        return C_INSTRUCTION;
+        return instructionType;
     }
 
     /**
-     * Returns symbol of current instruction
+     * Returns symbol of current instruction.
+     * The returned view is only valid until the next advance
      *
      * @throws Exception Trying to get symbol for other than A or L instruction results in Exception
      */
-    public String symbol() throws Exception {
-        return switch (instructionType()) {
-            case A_INSTRUCTION -> lineParts.get(0);
-            case L_INSTRUCTION -> lineParts.get(1);
-            default -> throw new Exception("Tried to get symbol for illegal instruction type");
-        };
+    public CharSequence symbol() throws Exception {
+        if (instructionType == C_INSTRUCTION) {
+            throw new Exception("Tried to get symbol for illegal instruction type");
+        }
+        if (symbolName != null) {
+            return symbolName;
+        }
+        symbol.set(currentLine, symbolStart, symbolEnd);
+        return symbol;
     }
 
     /**
-     * Gets dest part of the instruction
+     * Returns hash of the symbol as SymbolTable.hash() would, computed while scanning the line
      */
-    public String dest() {
-        return lineParts.get(2);
+    public int symbolHash() {
+        return symbolHash;
     }
 
     /**
-     * Gets comp part of the instruction
+     * Returns value of the current A instruction if it points to a number (e.g. @314), otherwise -1
      */
-    public String comp() {
-        return lineParts.get(3);
+    public int constant() {
+        if (instructionType != A_INSTRUCTION) {
+            return -1;
+        }
+        return constant(currentLine, symbolStart, symbolEnd);
     }
 
     /**
-     * Gets jump part of the instruction
+     * Value of the text between start and end if it is digits only, otherwise -1. Values past Integer.MAX_VALUE
+     * saturate to it instead of overflowing, as too large values are rejected by Code anyway
      */
-    public String jump() {
-        return lineParts.get(5);
+    public static int constant(CharSequence text, int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            int digit = c - '0';
+            value = value > (Integer.MAX_VALUE - digit) / 10 ? Integer.MAX_VALUE : value * 10 + digit;
+        }
+
+        return value;
+    }
+
+    /**
+     * Gets dest part of the instruction or null if there is none.
+     * The returned view is only valid until the next advance
+     */
+    public CharSequence dest() {
+        if (destStart < 0) {
+            return null;
+        }
+        dest.set(currentLine, destStart, destEnd);
+        return dest;
+    }
+
+    /**
+     * Gets comp part of the instruction.
+     * The returned view is only valid until the next advance
+     */
+    public CharSequence comp() {
+        comp.set(currentLine, compStart, compEnd);
+        return comp;
+    }
+
+    /**
+     * Gets jump part of the instruction or null if there is none.
+     * The returned view is only valid until the next advance
+     */
+    public CharSequence jump() {
+        if (jumpStart < 0) {
+            return null;
+        }
+        jump.set(currentLine, jumpStart, jumpEnd);
+        return jump;
+    }
+
+    /**
+     * Splits the current line into its parts in a single pass over the characters
+     *
+     * @return false if the line has no instruction (empty or comment only)
+     */
+    private boolean scan() {
+        int start = 0;
+        int end = currentLine.length();
+
+        // Comment runs until the end of the line
+        for (int i = start; i + 1 < end; i++) {
+            if (currentLine.charAt(i) == '/' && currentLine.charAt(i + 1) == '/') {
+                end = i;
+                break;
+            }
+        }
+
+        while (start < end && currentLine.charAt(start) <= ' ') start++;
+        while (end > start && currentLine.charAt(end - 1) <= ' ') end--;
+
+        if (start == end) {
+            return false;
+        }
+
+        switch (currentLine.charAt(start)) {
+            case '@' -> {
+                // @symbol
+                instructionType = A_INSTRUCTION;
+                symbolStart = start + 1;
+                symbolEnd = symbolStart;
+                symbolHash = 0;
+                int chars = 0; // All chars of the symbol or-ed, to tell if it is ASCII
+                for (char c; symbolEnd < end && (c = currentLine.charAt(symbolEnd)) > ' '; symbolEnd++) {
+                    symbolHash = 31 * symbolHash + c;
+                    chars |= c;
+                }
+                decodeSymbol(chars);
+            }
+            case '(' -> {
+                // (symbol)
+                instructionType = L_INSTRUCTION;
+                symbolStart = start + 1;
+                symbolEnd = symbolStart;
+                symbolHash = 0;
+                int chars = 0; // All chars of the symbol or-ed, to tell if it is ASCII
+                for (char c; symbolEnd < end && (c = currentLine.charAt(symbolEnd)) != ')'; symbolEnd++) {
+                    symbolHash = 31 * symbolHash + c;
+                    chars |= c;
+                }
+                decodeSymbol(chars);
+            }
+            default -> {
+                // dest=comp;jump where dest and jump are optional
+                instructionType = C_INSTRUCTION;
+                int equals = -1;
+                int semicolon = -1;
+
+                for (int i = start; i < end; i++) {
+                    char c = currentLine.charAt(i);
+                    if (c == '=' && equals < 0 && semicolon < 0) {
+                        equals = i;
+                    } else if (c == ';' && semicolon < 0) {
+                        semicolon = i;
+                    }
+                }
+
+                destStart = -1;
+                jumpStart = -1;
+                compStart = start;
+                compEnd = semicolon < 0 ? end : semicolon;
+
+                if (equals >= 0) {
+                    destStart = start;
+                    destEnd = trimEnd(start, equals);
+                    compStart = equals + 1;
+                }
+                if (semicolon >= 0) {
+                    jumpStart = trimStart(semicolon + 1, end);
+                    jumpEnd = end;
+                }
+
+                compStart = trimStart(compStart, compEnd);
+                compEnd = trimEnd(compStart, compEnd);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Lines read as bytes give one char per byte, which is only the symbol itself for ASCII. Other symbols are
+     * decoded, so they hash, compare and are stored the same whatever the source
+     */
+    private void decodeSymbol(int chars) {
+        symbolName = null;
+
+        if (chars >= 0x80) {
+            symbolName = currentLine.subSequence(symbolStart, symbolEnd).toString();
+            symbolHash = symbolName.hashCode();
+        }
+    }
+
+    private int trimStart(int start, int end) {
+        while (start < end && currentLine.charAt(start) <= ' ') start++;
+        return start;
+    }
+
+    private int trimEnd(int start, int end) {
+        while (end > start && currentLine.charAt(end - 1) <= ' ') end--;
+        return end;
     }
 }
@@ -0,0 +1,133 @@
+package nand.assembler.process;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class RomWriter {
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes();
+
+    private static final int HEX_RECORD_BYTES = 16; // Data bytes in one Intel HEX record
+    private static final int LOGISIM_WORDS_PER_LINE = 8;
+
+    /**
+     * Responsible for writing instruction words in one of the output formats
+     */
+    public RomWriter() {}
+
+    /**
+     * Writes words to a file, replacing its content
+     */
+    public void write(short[] words, OutputFormat format, String outputFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(outputFile),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(words, format, channel);
+        }
+    }
+
+    /**
+     * Encodes all the words into one buffer and writes it to the channel in bulk
+     */
+    public void write(short[] words, OutputFormat format, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = encode(words, format);
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Returns words in the format, ready to be read from the buffer
+     */
+    public ByteBuffer encode(short[] words, OutputFormat format) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(words.length, format));
+
+        switch (format) {
+            case TEXT -> {
+                for (short word : words) {
+                    for (int i = 15; i >= 0; i--) {
+                        buffer.put((byte) ('0' + (word >>> i & 1)));
+                    }
+                    buffer.put((byte) '\n');
+                }
+            }
+            case BINARY -> buffer.asShortBuffer().put(words); // ByteBuffer is big-endian by default
+            case INTEL_HEX -> encodeIntelHex(words, buffer);
+            case LOGISIM -> {
+                buffer.put("v2.0 raw\n".getBytes());
+                for (int i = 0; i < words.length; i++) {
+                    putHex(buffer, words[i] & 0xFFFF, 4);
+                    buffer.put((byte) ((i + 1) % LOGISIM_WORDS_PER_LINE == 0 || i + 1 == words.length ? '\n' : ' '));
+                }
+            }
+        }
+
+        return buffer.clear();
+    }
+
+    /**
+     * Exact number of bytes the words take in the format
+     */
+    private int encodedSize(int wordCount, OutputFormat format) {
+        return switch (format) {
+            case TEXT -> wordCount * 17;
+            case BINARY -> wordCount * 2;
+            case INTEL_HEX -> {
+                int bytes = wordCount * 2;
+                int records = (bytes + HEX_RECORD_BYTES - 1) / HEX_RECORD_BYTES;
+                int segments = Math.max(0, (bytes - 1) >> 16); // Extended address records after the first 64K
+                // ':' + count + address + type + checksum + '\n' is 12 characters around the data
+                yield records * 12 + bytes * 2 + segments * 16 + 12;
+            }
+            case LOGISIM -> "v2.0 raw\n".length() + wordCount * 5;
+        };
+    }
+
+    /**
+     * Data records of 16 bytes, extended linear address records past every 64K and the end of file record
+     */
+    private void encodeIntelHex(short[] words, ByteBuffer buffer) {
+        byte[] data = new byte[HEX_RECORD_BYTES];
+        int bytes = words.length * 2;
+
+        for (int address = 0; address < bytes; address += HEX_RECORD_BYTES) {
+            if (address > 0 && (address & 0xFFFF) == 0) {
+                int segment = address >>> 16;
+                putHexRecord(buffer, 0, 0x04, new byte[] {(byte) (segment >>> 8), (byte) segment}, 2);
+            }
+
+            int count = Math.min(HEX_RECORD_BYTES, bytes - address);
+            for (int i = 0; i < count; i++) {
+                short word = words[(address + i) / 2];
+                data[i] = (byte) ((address + i) % 2 == 0 ? word >>> 8 : word);
+            }
+            putHexRecord(buffer, address & 0xFFFF, 0x00, data, count);
+        }
+
+        putHexRecord(buffer, 0, 0x01, data, 0);
+    }
+
+    private void putHexRecord(ByteBuffer buffer, int address, int type, byte[] data, int count) {
+        int checksum = count + (address >>> 8) + address + type;
+
+        buffer.put((byte) ':');
+        putHex(buffer, count, 2);
+        putHex(buffer, address, 4);
+        putHex(buffer, type, 2);
+        for (int i = 0; i < count; i++) {
+            putHex(buffer, data[i] & 0xFF, 2);
+            checksum += data[i];
+        }
+        putHex(buffer, -checksum & 0xFF, 2);
+        buffer.put((byte) '\n');
+    }
+
+    private void putHex(ByteBuffer buffer, int value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer.put(HEX_DIGITS[value >>> (4 * i) & 0xF]);
+        }
+    }
+}
@@ -1,12 +1,26 @@
 package nand.assembler.process;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
-public class SymbolTable {
-    private final Map<String, Integer> symbolTable = new HashMap<>();
+/**
+ * Open addressing hash table from symbol names to addresses.
+ * <p>
+ * Symbols are looked up by any CharSequence (like a slice of the current line), so known symbols are found without
+ * allocating. Every symbol gets an id in order of insertion. A symbol can be in the table without an address yet,
+ * which is how uses of labels defined further down are remembered
+ */
+public final class SymbolTable {
+    public static final int UNRESOLVED = -1; // Address of a symbol that is used but not yet defined
+
+    // Entries in order of insertion, indexed by symbol id
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private int[] addresses = new int[64];
+    private int size = 0;
+
+    // Hash index. Holds symbol id + 1 of each occupied slot, 0 for empty slots. Kept at most half full
+    private int[] slots = new int[128];
 
-    private int addedSymbols = 0;
     private int availableMemoryLocation = 16; // Additional variables are stored in location 16 and up
 
     public SymbolTable() {
@@ -14,34 +28,107 @@ public class SymbolTable {
     }
 
     /**
-     * Checks if symbol in symbol table
+     * Hash of the symbol, same as String.hashCode() so names stored as String never need hashing again
+     */
+    public static int hash(CharSequence symbol) {
+        if (symbol instanceof String) {
+            return symbol.hashCode();
+        }
+
+        int hash = 0;
+        for (int i = 0; i < symbol.length(); i++) {
+            hash = 31 * hash + symbol.charAt(i);
+        }
+        return hash;
+    }
+
+    /**
+     * Checks if symbol in symbol table and has an address
      *
      * @param symbol Name in the symbol table
      */
-    public boolean containsVariable(String symbol) {
-        return symbolTable.containsKey(symbol);
+    public boolean containsVariable(CharSequence symbol) {
+        return getAddress(symbol) != UNRESOLVED;
     }
 
     /**
      * Gets address of symbol
      *
      * @param symbol Name in the symbol table
+     * @return Address or UNRESOLVED if symbol has no address
      */
-    public int getAddress(String symbol) {
-        return symbolTable.get(symbol);
+    public int getAddress(CharSequence symbol) {
+        return getAddress(symbol, hash(symbol));
     }
 
     /**
-     * Save location (line number) of L_INSTRUCTION to recall it later when @location used
+     * Gets address of symbol with already known hash. Does not change the table, so can be called from many threads
+     *
+     * @return Address or UNRESOLVED if symbol has no address
+     */
+    public int getAddress(CharSequence symbol, int hash) {
+        int slot = findSlot(symbol, hash);
+        return slots[slot] == 0 ? UNRESOLVED : addresses[slots[slot] - 1];
+    }
+
+    /**
+     * Gets id of symbol with already known hash, adding it without an address if it is not in the table
+     */
+    public int getId(CharSequence symbol, int hash) {
+        int slot = findSlot(symbol, hash);
+
+        if (slots[slot] == 0) {
+            return insert(slot, symbol, hash, UNRESOLVED);
+        }
+        return slots[slot] - 1;
+    }
+
+    /**
+     * Gets address of symbol by its id
+     *
+     * @return Address or UNRESOLVED if symbol has no address
+     */
+    public int getAddressById(int id) {
+        return addresses[id];
+    }
+
+    /**
+     * Gets name of symbol by its id
+     */
+    public String getNameById(int id) {
+        return names[id];
+    }
+
+    /**
+     * Number of symbols in the table, including the default ones. It is also the id the next new symbol gets
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Save location of L_INSTRUCTION to recall it later when @location used.
+     * Symbols that already have an address keep it
      *
      * @param symbol Name in the symbol table
-     * @param lineIndex Line number where L_INSTRUCTION occurs
+     * @param address ROM address of the instruction following the L_INSTRUCTION
+     * @return false if symbol already had an address
+     */
+    public boolean addLabelEntry(CharSequence symbol, int address) {
+        return addLabelEntry(symbol, hash(symbol), address);
+    }
+
+    /**
+     * Same as addLabelEntry(symbol, address) for symbol with already known hash
      */
-    public void addLineEntry(String symbol, Integer lineIndex) {
-        symbolTable.put(symbol, lineIndex - addedSymbols - 1);
+    public boolean addLabelEntry(CharSequence symbol, int hash, int address) {
+        int id = getId(symbol, hash);
 
-        // Added line entries need to be counted as the actual end line number depends on occurrences of L instructions
-        addedSymbols += 1;
+        if (addresses[id] != UNRESOLVED) {
+            return false;
+        }
+        addresses[id] = address;
+        return true;
     }
 
     /**
@@ -49,25 +136,115 @@ public class SymbolTable {
      *
      * @param symbol Name in the symbol table
      */
-    public void addEntry(String symbol) {
-        symbolTable.put(symbol, availableMemoryLocation);
+    public void addEntry(CharSequence symbol) {
+        int id = getId(symbol, hash(symbol));
+        addresses[id] = availableMemoryLocation;
         availableMemoryLocation += 1;
     }
 
+    /**
+     * Gets address of symbol, giving it the next available memory location if it has none
+     *
+     * @param symbol Name in the symbol table
+     */
+    public int resolveOrAllocate(CharSequence symbol) {
+        return resolveOrAllocateById(getId(symbol, hash(symbol)));
+    }
+
+    /**
+     * Same as resolveOrAllocate(symbol) for the symbol with the id
+     */
+    public int resolveOrAllocateById(int id) {
+        if (addresses[id] == UNRESOLVED) {
+            addresses[id] = availableMemoryLocation;
+            availableMemoryLocation += 1;
+        }
+        return addresses[id];
+    }
+
+    /**
+     * Finds the slot holding the symbol or the empty slot where it would be inserted (linear probing)
+     */
+    private int findSlot(CharSequence symbol, int hash) {
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+
+        while (slots[slot] != 0) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && equal(names[id], symbol)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private int insert(int slot, CharSequence symbol, int hash, int address) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+            addresses = Arrays.copyOf(addresses, size * 2);
+        }
+
+        int id = size++;
+        names[id] = symbol.toString();
+        hashes[id] = hash;
+        addresses[id] = address;
+        slots[slot] = id + 1;
+
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Spreads higher bits of the hash to the lower ones used for the slot index
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equal(String name, CharSequence symbol) {
+        if (name.length() != symbol.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != symbol.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Initializes initial default symbols
      */
     private void addDefaultSymbols() {
         for (int i = 0; i <= 15; i++) {
-            symbolTable.put(String.format("R%s", i), i);
+            addLabelEntry(String.format("R%s", i), i);
         }
-        symbolTable.put("SCREEN", 16384);
-        symbolTable.put("KBD", 24576);
-        symbolTable.put("SP", 0);
-        symbolTable.put("LCL", 1);
-        symbolTable.put("ARG", 2);
-        symbolTable.put("THIS", 3);
-        symbolTable.put("THAT", 4);
+        addLabelEntry("SCREEN", 16384);
+        addLabelEntry("KBD", 24576);
+        addLabelEntry("SP", 0);
+        addLabelEntry("LCL", 1);
+        addLabelEntry("ARG", 2);
+        addLabelEntry("THIS", 3);
+        addLabelEntry("THAT", 4);
     }
 
 }
@@ -0,0 +1,72 @@
+package nand.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lines of a buffer that holds the whole source, such as a memory mapped file
+ */
+class ByteBufferLineReader extends LineReader {
+    private final ByteBuffer buffer;
+    private final ByteSlice line = new ByteSlice();
+    private int position; // Absolute index where the next line starts
+
+    ByteBufferLineReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.position = buffer.position();
+    }
+
+    @Override
+    public boolean hasMoreLines() {
+        return position < buffer.limit();
+    }
+
+    @Override
+    public boolean nextLine() {
+        int limit = buffer.limit();
+        if (position >= limit) {
+            return false;
+        }
+
+        int end = position;
+        while (end < limit && buffer.get(end) != '\n' && buffer.get(end) != '\r') end++;
+        line.set(buffer, position, end);
+
+        position = end + 1;
+        if (end + 1 < limit && buffer.get(end) == '\r' && buffer.get(end + 1) == '\n') {
+            position += 1;
+        }
+
+        return true;
+    }
+
+    @Override
+    public CharSequence line() {
+        return line;
+    }
+
+    @Override
+    public List<LineReader> split(int chunkSize) {
+        List<LineReader> chunks = new ArrayList<>();
+        int limit = buffer.limit();
+        int start = position;
+
+        while (start < limit) {
+            int end = (int) Math.min((long) start + chunkSize, limit);
+
+            // Move the end after the next line terminator
+            while (end < limit && buffer.get(end - 1) != '\n' && (buffer.get(end - 1) != '\r' || buffer.get(end) == '\n')) end++;
+
+            chunks.add(new ByteBufferLineReader(buffer.duplicate().limit(end).position(start)));
+            start = end;
+        }
+
+        return chunks;
+    }
+
+    @Override
+    public void reset() {
+        position = buffer.position();
+    }
+}
@@ -0,0 +1,71 @@
+package nand.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only view of a byte range of a buffer as characters. Each byte is one char, which is exact for ASCII.
+ * toString() decodes the range as UTF-8
+ */
+public class ByteSlice implements CharSequence {
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+    private int start = 0;
+    private int end = 0;
+
+    public ByteSlice() {}
+
+    /**
+     * Point this slice to [start, end) of the buffer, indices are absolute
+     */
+    public void set(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Buffer holding the raw bytes of this slice
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Absolute index of the first byte in buffer()
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * Absolute index after the last byte in buffer()
+     */
+    public int end() {
+        return end;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(start + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        ByteSlice slice = new ByteSlice();
+        slice.set(buffer, this.start + start, this.start + end);
+        return slice;
+    }
+
+    @Override
+    public String toString() {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+        }
+        return StandardCharsets.UTF_8.decode(buffer.slice(start, end - start)).toString();
+    }
+}
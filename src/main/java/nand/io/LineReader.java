@@ -0,0 +1,107 @@
+package nand.io;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Source of text lines shared by all the parsers. Lines end with \n, \r or \r\n.
+ * <p>
+ * Files are memory mapped and lines are returned as views of the mapped bytes, so nothing is copied before parsing.
+ * Pipes and other streams are read through a reusable buffer instead.
+ * Lines of byte sources map every byte to one char, which is exact for the ASCII parts that parsers look at.
+ * Use toString() of the line to get it decoded as UTF-8
+ */
+public abstract class LineReader {
+
+    /**
+     * Opens a file. Regular files are memory mapped, anything else (like a named pipe) is streamed
+     *
+     * @param fileLocation Path of the file
+     * @throws IOException Failed opening the file results in an exception
+     */
+    public static LineReader open(String fileLocation) throws IOException {
+        Path path = Path.of(fileLocation);
+
+        if (!Files.exists(path)) {
+            throw new FileNotFoundException(fileLocation);
+        }
+
+        if (Files.isRegularFile(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() <= Integer.MAX_VALUE) {
+                    // Mapping stays valid after the channel is closed
+                    return new ByteBufferLineReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+            }
+        }
+
+        return new StreamLineReader(Files.newInputStream(path));
+    }
+
+    /**
+     * Reads lines from the stream through a buffer. Stream is not closed by the reader
+     */
+    public static LineReader of(InputStream source) {
+        return new StreamLineReader(source);
+    }
+
+    /**
+     * Reads lines from remaining bytes of the buffer. Buffer position is not changed
+     */
+    public static LineReader of(ByteBuffer source) {
+        return new ByteBufferLineReader(source.duplicate());
+    }
+
+    /**
+     * Reads lines from text held in memory
+     */
+    public static LineReader of(CharSequence source) {
+        return new TextLineReader(source);
+    }
+
+    /**
+     * Checks whether there are lines left
+     *
+     * @throws IOException Failed reading from source results in an exception
+     */
+    public abstract boolean hasMoreLines() throws IOException;
+
+    /**
+     * Moves to the next line
+     *
+     * @return false if there are no lines left
+     * @throws IOException Failed reading from source results in an exception
+     */
+    public abstract boolean nextLine() throws IOException;
+
+    /**
+     * Current line without its line terminator. The returned view is only valid until the next line is read
+     */
+    public abstract CharSequence line();
+
+    /**
+     * Splits the remaining lines into readers of consecutive line ranges, each about chunkSize bytes or chars long.
+     * Chunks can be read independently of each other. Streams can not be split and are returned as the only chunk
+     *
+     * @param chunkSize Approximate length of a chunk, chunks end at the first line end after it
+     */
+    public List<LineReader> split(int chunkSize) {
+        return List.of(this);
+    }
+
+    /**
+     * Go back to the first line
+     *
+     * @throws UnsupportedOperationException Streams cannot be read twice
+     */
+    public void reset() {
+        throw new UnsupportedOperationException("Stream can not be reset");
+    }
+}
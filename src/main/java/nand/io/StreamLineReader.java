@@ -0,0 +1,105 @@
+package nand.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Lines of a stream, read through a buffer that only grows when a single line does not fit in it
+ */
+class StreamLineReader extends LineReader {
+    private final InputStream stream;
+    private final ByteSlice line = new ByteSlice();
+
+    private byte[] bytes = new byte[1 << 16];
+    private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private int position = 0; // Index in bytes where the next line starts
+    private int limit = 0; // Index in bytes after the last byte read from stream
+    private boolean endOfStream = false;
+    private boolean skipLineFeed = false; // Previous line ended with \r, so a following \n belongs to it
+
+    StreamLineReader(InputStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public boolean hasMoreLines() throws IOException {
+        while (true) {
+            if (skipLineFeed && position < limit) {
+                skipLineFeed = false;
+                if (bytes[position] == '\n') {
+                    position += 1;
+                }
+            }
+
+            if (position < limit) {
+                return true;
+            }
+            if (endOfStream) {
+                return false;
+            }
+            fill();
+        }
+    }
+
+    @Override
+    public boolean nextLine() throws IOException {
+        if (!hasMoreLines()) {
+            return false;
+        }
+
+        int end = position;
+        while (true) {
+            while (end < limit && bytes[end] != '\n' && bytes[end] != '\r') end++;
+
+            if (end < limit || endOfStream) {
+                break;
+            }
+
+            // Line continues past the buffered bytes
+            int offset = position;
+            fill();
+            end -= offset - position;
+        }
+
+        line.set(buffer, position, end);
+
+        if (end < limit) {
+            skipLineFeed = bytes[end] == '\r';
+            position = end + 1;
+        } else {
+            position = end;
+        }
+
+        return true;
+    }
+
+    @Override
+    public CharSequence line() {
+        return line;
+    }
+
+    /**
+     * Moves unread bytes to the beginning of the buffer and reads more after them
+     */
+    private void fill() throws IOException {
+        int unread = limit - position;
+
+        if (unread == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        } else {
+            System.arraycopy(bytes, position, bytes, 0, unread);
+        }
+        buffer = ByteBuffer.wrap(bytes);
+        position = 0;
+        limit = unread;
+
+        int read = stream.read(bytes, limit, bytes.length - limit);
+        if (read < 0) {
+            endOfStream = true;
+        } else {
+            limit += read;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package nand.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lines of text held in memory
+ */
+class TextLineReader extends LineReader {
+    private final CharSequence text;
+    private final TextSlice line = new TextSlice();
+    private final int start; // Index of the first line
+    private final int limit; // Index after the last line
+    private int position; // Index where the next line starts
+
+    TextLineReader(CharSequence text) {
+        this(text, 0, text.length());
+    }
+
+    TextLineReader(CharSequence text, int start, int end) {
+        this.text = text;
+        this.start = start;
+        this.limit = end;
+        this.position = start;
+    }
+
+    @Override
+    public boolean hasMoreLines() {
+        return position < limit;
+    }
+
+    @Override
+    public boolean nextLine() {
+        if (position >= limit) {
+            return false;
+        }
+
+        int end = position;
+        while (end < limit && text.charAt(end) != '\n' && text.charAt(end) != '\r') end++;
+        line.set(text, position, end);
+
+        position = end + 1;
+        if (end + 1 < limit && text.charAt(end) == '\r' && text.charAt(end + 1) == '\n') {
+            position += 1;
+        }
+
+        return true;
+    }
+
+    @Override
+    public CharSequence line() {
+        return line;
+    }
+
+    @Override
+    public List<LineReader> split(int chunkSize) {
+        List<LineReader> chunks = new ArrayList<>();
+        int chunkStart = position;
+
+        while (chunkStart < limit) {
+            int end = (int) Math.min((long) chunkStart + chunkSize, limit);
+
+            // Move the end after the next line terminator
+            while (end < limit && text.charAt(end - 1) != '\n' && (text.charAt(end - 1) != '\r' || text.charAt(end) == '\n')) end++;
+
+            chunks.add(new TextLineReader(text, chunkStart, end));
+            chunkStart = end;
+        }
+
+        return chunks;
+    }
+
+    @Override
+    public void reset() {
+        position = start;
+    }
+}
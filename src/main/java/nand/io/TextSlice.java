@@ -0,0 +1,42 @@
+package nand.io;
+
+/**
+ * Read-only view of a part of another character sequence. Nothing is copied, so one slice
+ * can be pointed at a new part of a line for every instruction without allocating
+ */
+public class TextSlice implements CharSequence {
+    private CharSequence source = "";
+    private int start = 0;
+    private int end = 0;
+
+    public TextSlice() {}
+
+    /**
+     * Point this slice to [start, end) of the source
+     */
+    public void set(CharSequence source, int start, int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return source.subSequence(this.start + start, this.start + end);
+    }
+
+    @Override
+    public String toString() {
+        return source.subSequence(start, end).toString();
+    }
+}
@@ -1,10 +1,9 @@
 package nand.jack_analyzer.process;
 
+import nand.io.LineReader;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -12,7 +11,7 @@ import java.util.stream.IntStream;
 
 public class JackTokenizer {
 
-    private RandomAccessFile vmFile;
+    private LineReader vmFile;
     public int lineIndex = 0; // Current line number
 
     public ArrayList<Token> tokens = new ArrayList<>();
@@ -34,7 +33,7 @@ public class JackTokenizer {
     public String currentFileName = "";
 
 
-    public JackTokenizer(String textFileLocation) {
+    public JackTokenizer(String textFileLocation) throws IOException {
         File file = new File(textFileLocation);
         if (file.isDirectory() && file.listFiles() != null) {
             // If directory passed, parse all '.jack' files from it
@@ -55,7 +54,7 @@ public class JackTokenizer {
      * @throws IOException Failed reading from file results in an exception
      */
     public boolean hasMoreLines() throws IOException {
-        if (vmFile.getFilePointer() < vmFile.length()) {
+        if (vmFile.hasMoreLines()) {
             return true;
         } else {
             if (! filesInPath.isEmpty()) {
@@ -75,11 +74,10 @@ public class JackTokenizer {
     public void tokenizeLine() throws IOException {
         lineIndex += 1;
         // Current line content
-        String currentLine = vmFile.readLine();
-        if (currentLine == null) {
+        if (!vmFile.nextLine()) {
             return;
         }
-        currentLine = currentLine.trim();
+        String currentLine = vmFile.line().toString().trim();
 
         List<String> lineParts;
 
@@ -150,16 +148,14 @@ public class JackTokenizer {
 
     /**
      * Gets next file from filesInPath. Will continue reading from it
+     *
+     * @throws IOException Failed opening the file results in an exception
      */
-    private void getNextFile() {
-        try {
-            vmFile = new RandomAccessFile(filesInPath.get(0), "r");
-            lineIndex = 0;
-            currentFileName = filesInPath.get(0).getAbsolutePath();
-            filesInPath.remove(0);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
+    private void getNextFile() throws IOException {
+        vmFile = LineReader.open(filesInPath.get(0).getPath());
+        lineIndex = 0;
+        currentFileName = filesInPath.get(0).getAbsolutePath();
+        filesInPath.remove(0);
     }
 
     /**
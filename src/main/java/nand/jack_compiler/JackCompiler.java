@@ -4,11 +4,22 @@ import nand.jack_compiler.process.CompilationEngine;
 import nand.jack_analyzer.process.JackTokenizer;
 
 import java.io.File;
+import java.io.OutputStream;
 
 // TODO: Add comments for improved readability
 public class JackCompiler {
 
     public static void translate(String inputFile) throws Exception {
+        translate(inputFile, null);
+    }
+
+    // Writes VM code of all the classes to the stream if one is given, otherwise a .vm file next to each .jack file
+    public static void translate(String inputFile, OutputStream output) throws Exception {
+        translate(inputFile, output, false);
+    }
+
+    // Same as above, writing VM bytecode (.vmb files) instead of text if asked to
+    public static void translate(String inputFile, OutputStream output, boolean bytecode) throws Exception {
         JackTokenizer jackTokenizer = new JackTokenizer(inputFile);
 
         while (jackTokenizer.hasMoreLines()) {
@@ -18,7 +29,9 @@ public class JackCompiler {
         nand.jack_analyzer.process.CompilationEngine analyzerEngine = new nand.jack_analyzer.process.CompilationEngine(jackTokenizer);
         analyzerEngine.compileAll();
 
-        CompilationEngine compilationEngine = new CompilationEngine(analyzerEngine.fileNames);
+        CompilationEngine compilationEngine = output != null
+                ? new CompilationEngine(analyzerEngine.fileNames, output, bytecode)
+                : new CompilationEngine(analyzerEngine.fileNames, bytecode);
         compilationEngine.compileAll();
 
         // Delete temporarily generated xml files
@@ -3,6 +3,7 @@ package nand.jack_compiler.process;
 
 import nand.jack_analyzer.process.KeywordEnum;
 import nand.vm_translator.process.command.ArithmeticType;
+import nand.vm_translator.process.command.Bytecode;
 import nand.vm_translator.process.command.SegmentType;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -13,6 +14,7 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Objects;
 import java.util.Stack;
@@ -22,19 +24,44 @@ public class CompilationEngine {
     private ArrayList<String> inputFiles;
     private Document xml;
     private VMWriter vmWriter;
+    private VMWriter sharedWriter; // Set if all the files are compiled to one stream
+    private boolean bytecode; // VM bytecode is written instead of text
     private String className;
 
     public CompilationEngine(ArrayList<String> inputFiles) {
         this.inputFiles = inputFiles;
     }
 
-    public void compileAll() {
+    // Each file is compiled to a .vmb file of VM bytecode instead of a .vm file if asked to
+    public CompilationEngine(ArrayList<String> inputFiles, boolean bytecode) {
+        this.inputFiles = inputFiles;
+        this.bytecode = bytecode;
+    }
+
+    // All the files are compiled one after another to the stream instead of a .vm file each
+    public CompilationEngine(ArrayList<String> inputFiles, OutputStream output) {
+        this.inputFiles = inputFiles;
+        this.sharedWriter = new VMWriter(output);
+    }
+
+    // Same as above, writing VM bytecode if asked to
+    public CompilationEngine(ArrayList<String> inputFiles, OutputStream output, boolean bytecode) throws IOException {
+        this.inputFiles = inputFiles;
+        this.sharedWriter = new VMWriter(output, bytecode);
+        this.bytecode = bytecode;
+    }
+
+    public void compileAll() throws IOException {
         inputFiles.forEach(file -> compile(file));
+
+        if (sharedWriter != null) {
+            sharedWriter.flush();
+        }
     }
 
     public void compile(String fileName) {
         try {
-            vmWriter = new VMWriter(fileName.replace(".jack", ".vm"));
+            vmWriter = sharedWriter != null ? sharedWriter : new VMWriter(fileName.replace(".jack", bytecode ? Bytecode.EXTENSION : ".vm"), bytecode);
 
             DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
             DocumentBuilder db = dbf.newDocumentBuilder();
@@ -46,7 +73,9 @@ public class CompilationEngine {
 
             compileClass(programClass);
             fr.close();
-            vmWriter.close();
+            if (vmWriter != sharedWriter) {
+                vmWriter.close();
+            }
 
         } catch (Exception e) {
             System.err.println("Error occurred while reading " + fileName);
@@ -1,68 +1,177 @@
 package nand.jack_compiler.process;
 
 import nand.vm_translator.process.command.ArithmeticType;
+import nand.vm_translator.process.command.Bytecode;
 import nand.vm_translator.process.command.CommandType;
 import nand.vm_translator.process.command.SegmentType;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 
 public class VMWriter {
-    private BufferedWriter vmFile;
+    private BufferedWriter vmFile; // Text output, null when writing bytecode
+    private OutputStream bytecode; // Bytecode output, null when writing text
+    private final Map<String, Integer> names = new HashMap<>(); // Names already in the bytecode, by their id
 
     public VMWriter(String outputFilePath) throws IOException {
-        vmFile = new BufferedWriter(new FileWriter(outputFilePath));
+        this(outputFilePath, false);
+    }
+
+    // Writes VM bytecode (.vmb) instead of text if asked to
+    public VMWriter(String outputFilePath, boolean bytecode) throws IOException {
+        if (bytecode) {
+            startBytecode(new BufferedOutputStream(new FileOutputStream(outputFilePath)));
+        } else {
+            vmFile = new BufferedWriter(new FileWriter(outputFilePath));
+        }
+    }
+
+    // Writes to a stream, e.g. standard output. Use flush() instead of close() to keep the stream open
+    public VMWriter(OutputStream output) {
+        vmFile = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    }
+
+    // Writes VM bytecode to a stream instead of text if asked to
+    public VMWriter(OutputStream output, boolean bytecode) throws IOException {
+        if (bytecode) {
+            startBytecode(new BufferedOutputStream(output));
+        } else {
+            vmFile = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        }
     }
 
     // Writes a VM push command
     public void writePush(SegmentType segment, int index) throws IOException {
+        if (bytecode != null) {
+            writePushPop(CommandType.C_PUSH, segment, index);
+            return;
+        }
         vmFile.write(String.format("push %s %s\n", segment.label, index));
     }
 
 
     // Writes a VM pop command
     public void writePop(SegmentType segment, int index) throws IOException {
+        if (bytecode != null) {
+            writePushPop(CommandType.C_POP, segment, index);
+            return;
+        }
         vmFile.write(String.format("pop %s %s\n", segment.label, index));
     }
 
     // Writes a VM arithmetic-logical command
     public void writeArithmetic(ArithmeticType command) throws IOException {
+        if (bytecode != null) {
+            bytecode.write(Bytecode.opcode(CommandType.C_ARITHMETIC, command));
+            return;
+        }
         vmFile.write(command.label + "\n");
     }
 
     // Writes a VM label command
     public void writeLabel(String label) throws IOException {
-        vmFile.write(String.format("%s %s\n", CommandType.C_LABEL.label, label));
+        writeNamed(CommandType.C_LABEL, label);
     }
 
     // Writes a VM goto command
     public void writeGoto(String label) throws IOException {
-        vmFile.write(String.format("%s %s\n", CommandType.C_GOTO.label, label));
+        writeNamed(CommandType.C_GOTO, label);
     }
 
     // Writes a VM if-goto command
     public void writeIf(String label) throws IOException {
-        vmFile.write(String.format("%s %s\n", CommandType.C_IF.label, label));
+        writeNamed(CommandType.C_IF, label);
     }
 
     // Writes a VM call command
     public void writeCall(String label, int nArgs) throws IOException {
-        vmFile.write(String.format("%s %s %s\n", CommandType.C_CALL.label, label, nArgs));
+        writeFunction(CommandType.C_CALL, label, nArgs);
     }
 
     // Writes a VM function command
     public void writeFunction(String functionName, int nVars) throws IOException {
-        vmFile.write(String.format("%s %s %s\n", CommandType.C_FUNCTION.label, functionName, nVars));
+        writeFunction(CommandType.C_FUNCTION, functionName, nVars);
     }
 
     // Writes a VM return command
     public void writeReturn() throws IOException {
+        if (bytecode != null) {
+            bytecode.write(Bytecode.opcode(CommandType.C_RETURN, null));
+            return;
+        }
         vmFile.write(String.format("%s\n", CommandType.C_RETURN.label));
     }
 
+    // Writes out all buffered commands
+    public void flush() throws IOException {
+        if (bytecode != null) {
+            bytecode.flush();
+        } else {
+            vmFile.flush();
+        }
+    }
+
     // Closes the output file / stream
     public void close() throws IOException {
-        vmFile.close();
+        if (bytecode != null) {
+            bytecode.close();
+        } else {
+            vmFile.close();
+        }
+    }
+
+    private void startBytecode(OutputStream output) throws IOException {
+        bytecode = output;
+        bytecode.write(Bytecode.MAGIC);
+    }
+
+    private void writePushPop(CommandType type, SegmentType segment, int index) throws IOException {
+        bytecode.write(Bytecode.opcode(type, null));
+        bytecode.write(segment.ordinal());
+        Bytecode.writeVarint(bytecode, index);
+    }
+
+    // Writes a label, goto or if-goto command
+    private void writeNamed(CommandType type, String label) throws IOException {
+        if (bytecode != null) {
+            bytecode.write(Bytecode.opcode(type, null));
+            writeName(label);
+            return;
+        }
+        vmFile.write(String.format("%s %s\n", type.label, label));
+    }
+
+    // Writes a function or call command
+    private void writeFunction(CommandType type, String functionName, int count) throws IOException {
+        if (bytecode != null) {
+            bytecode.write(Bytecode.opcode(type, null));
+            writeName(functionName);
+            Bytecode.writeVarint(bytecode, count);
+            return;
+        }
+        vmFile.write(String.format("%s %s %s\n", type.label, functionName, count));
+    }
+
+    // Names are written in full once, then by the order they first appeared in
+    private void writeName(String name) throws IOException {
+        Integer id = names.get(name);
+        if (id != null) {
+            Bytecode.writeVarint(bytecode, id);
+            return;
+        }
+
+        names.put(name, names.size() + 1);
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        Bytecode.writeVarint(bytecode, 0);
+        Bytecode.writeVarint(bytecode, bytes.length);
+        bytecode.write(bytes);
     }
 }
\ No newline at end of file
@@ -0,0 +1,266 @@
+package nand.vm_translator;
+
+import nand.assembler.Linker;
+import nand.assembler.ObjectFile;
+import nand.assembler.RomBuilder;
+import nand.assembler.RomImage;
+import nand.vm_translator.process.*;
+import nand.vm_translator.process.command.Command;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+
+/**
+ * Translates the files of a directory on the fork/join pool, each into a buffer or a relocatable object of its own.
+ * Buffers are written out in the order a single parser reads the files, between the bootstrap and the end loop.
+ * Objects are encoded as the code is generated, without assembly text, and linked in that order
+ */
+class ParallelTranslator {
+
+    public static void translate(List<File> files, OutputStream output, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        List<FileTranslation> translations = new ArrayList<>();
+        files.forEach(file -> translations.add(new FileTranslation(file, optimizations, true)));
+
+        translate(translations, optimizations, inlineSize);
+
+        StringBuilder buffer = new StringBuilder();
+        Code code = new Code(buffer, optimizations);
+        Writer outputWriter = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        char[] chars = new char[0];
+
+        // Set stack pointer to 256 initially, Sys.init is executed first
+        code.writeBootstrap(Parser.className(files.get(0)).equals("Sys"));
+        chars = VMTranslator.flush(buffer, outputWriter, chars);
+
+        for (FileTranslation translation : translations) {
+            chars = VMTranslator.flush(translation.buffer, outputWriter, chars);
+            code.addRoutinesUsedBy(translation.code);
+        }
+
+        code.writeEnd();
+        VMTranslator.flush(buffer, outputWriter, chars);
+        outputWriter.flush();
+    }
+
+    /**
+     * Translates every file into a relocatable object next to it, then links the objects between the bootstrap and
+     * the end loop. An object newer than its file, made with the same optimizations, is reused instead
+     */
+    public static RomImage link(List<File> files, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        String tag = optimizations.stream().sorted().map(optimization -> optimization.label).collect(Collectors.joining(","));
+        List<FileTranslation> translations = new ArrayList<>();
+        files.forEach(file -> translations.add(new FileTranslation(file, optimizations, false)));
+
+        // With whole program optimizations, code of a file depends on the other files, so objects are always made again
+        if (!VMTranslator.needsWholeProgram(optimizations)) {
+            runInParallel(translations, translation -> translation.reuseObject(tag));
+        }
+
+        List<FileTranslation> changed = translations.stream().filter(translation -> translation.object == null).toList();
+        translate(changed, optimizations, inlineSize);
+        runInParallel(changed, translation -> translation.writeObject(tag));
+
+        return link(files, translations, optimizations, tag);
+    }
+
+    /**
+     * Translates the files straight into machine code, through objects that are only kept in memory
+     */
+    public static RomImage assemble(List<File> files, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        List<FileTranslation> translations = new ArrayList<>();
+        files.forEach(file -> translations.add(new FileTranslation(file, optimizations, false)));
+
+        translate(translations, optimizations, inlineSize);
+        translations.forEach(translation -> translation.object = translation.rom.buildObject(""));
+
+        return link(files, translations, optimizations, "");
+    }
+
+    /**
+     * Links the objects of the files between the bootstrap and the end loop. These are encoded every time,
+     * as the shared routines at the end depend on all files
+     */
+    private static RomImage link(List<File> files, List<FileTranslation> translations, Set<Optimization> optimizations, String tag) throws Exception {
+        RomBuilder start = new RomBuilder(true);
+        RomBuilder end = new RomBuilder(true);
+        Code startCode = new Code(new RomOutput(start), optimizations, "");
+        Code endCode = new Code(new RomOutput(end), optimizations, "");
+        List<ObjectFile> objects = new ArrayList<>();
+
+        startCode.writeBootstrap(Parser.className(files.get(0)).equals("Sys"));
+        objects.add(start.buildObject(tag));
+
+        // Routines used by the bootstrap are written with the ones of the files
+        endCode.addRoutinesUsedBy(startCode);
+        for (FileTranslation translation : translations) {
+            objects.add(translation.object);
+            endCode.addRoutinesUsedBy(translation.object.symbols);
+        }
+
+        endCode.writeEnd();
+        objects.add(end.buildObject(tag));
+
+        return Linker.link(objects);
+    }
+
+    /**
+     * Translates the files into their buffers
+     */
+    private static void translate(List<FileTranslation> translations, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        if (VMTranslator.needsWholeProgram(optimizations)) {
+            // Whole program is parsed first, as any file may call functions of any other
+            runInParallel(translations, FileTranslation::parse);
+
+            if (optimizations.contains(Optimization.INLINE)) {
+                Inliner inliner = new Inliner(inlineSize);
+                translations.forEach(translation -> inliner.add(translation.commands));
+                runInParallel(translations, translation -> translation.commands = inliner.inline(translation.commands));
+            }
+
+            CallGraph callGraph = new CallGraph();
+            translations.forEach(translation -> callGraph.add(translation.commands));
+            Set<String> reachable = optimizations.contains(Optimization.DEAD_FUNCTIONS) ? callGraph.reachable() : null;
+
+            runInParallel(translations, translation -> translation.translate(CallGraph.keep(translation.commands, reachable)));
+        } else {
+            runInParallel(translations, FileTranslation::translate);
+        }
+    }
+
+    /**
+     * Runs the step for all files on the fork/join pool. Failure of the earliest file is rethrown,
+     * which is the same failure reading files one by one would report
+     */
+    private static void runInParallel(List<FileTranslation> translations, TranslationStep step) throws Exception {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (FileTranslation translation : translations) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    step.run(translation);
+                } catch (Exception e) {
+                    translation.failure = e;
+                }
+            }));
+        }
+
+        ForkJoinTask.invokeAll(tasks);
+
+        for (FileTranslation translation : translations) {
+            if (translation.failure != null) {
+                throw translation.failure;
+            }
+        }
+    }
+
+    private interface TranslationStep {
+        void run(FileTranslation translation) throws Exception;
+    }
+
+    private static class FileTranslation {
+        private final File file;
+        private Exception failure;
+
+        private List<Command> commands = new ArrayList<>(); // Commands of the file, when parsed separately
+        private final StringBuilder buffer; // Assembly of the file, when written as text
+        private final RomBuilder rom; // Machine code of the file otherwise
+        private final Code code;
+        private final Peephole peephole;
+        private ObjectFile object; // Encoded code of the file, when linked
+
+        /**
+         * @param text Whether the file is translated to assembly text instead of machine code
+         */
+        private FileTranslation(File file, Set<Optimization> optimizations, boolean text) {
+            this.file = file;
+            this.buffer = text ? new StringBuilder() : null;
+            this.rom = text ? null : new RomBuilder(true);
+
+            // Each file counts its labels from 0, so its name keeps them apart from labels of other files
+            String labelPrefix = Parser.className(file) + '.';
+
+            code = text ? new Code(buffer, optimizations, labelPrefix) : new Code(new RomOutput(rom), optimizations, labelPrefix);
+            peephole = optimizations.contains(Optimization.PEEPHOLE) ? new Peephole(code) : null;
+        }
+
+        private void parse() throws Exception {
+            Parser parser = new Parser(file.getPath());
+
+            while (parser.hasMoreLines()) {
+                parser.advance();
+                commands.add(parser.command());
+            }
+        }
+
+        /**
+         * Translates the file as it is parsed
+         */
+        private void translate() throws Exception {
+            Parser parser = new Parser(file.getPath());
+
+            while (parser.hasMoreLines()) {
+                parser.advance();
+                write(parser.command());
+            }
+            end();
+        }
+
+        private void translate(List<Command> commands) {
+            commands.forEach(this::write);
+            end();
+        }
+
+        private void write(Command command) {
+            if (peephole != null) {
+                peephole.write(command);
+            } else {
+                code.write(command);
+            }
+        }
+
+        private void end() {
+            if (peephole != null) {
+                peephole.flush();
+            }
+            code.writeFileEnd();
+        }
+
+        /**
+         * Reads the object of the file if it was made after the file was last changed, with the same optimizations
+         */
+        private void reuseObject(String tag) {
+            File objectFile = objectFile();
+            if (objectFile.lastModified() <= file.lastModified()) {
+                return;
+            }
+
+            try {
+                ObjectFile reused = ObjectFile.read(objectFile.getPath());
+                object = reused.tag.equals(tag) ? reused : null;
+            } catch (IOException e) {
+                // Object that can not be read is made again
+                object = null;
+            }
+        }
+
+        /**
+         * Ends the object of the translated file and saves it for later runs
+         */
+        private void writeObject(String tag) throws Exception {
+            object = rom.buildObject(tag);
+            object.write(objectFile().getPath());
+        }
+
+        private File objectFile() {
+            return new File(file.getParentFile(), Parser.className(file) + ObjectFile.EXTENSION);
+        }
+    }
+}
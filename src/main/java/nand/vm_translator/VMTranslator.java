@@ -1,59 +1,268 @@
 package nand.vm_translator;
+import nand.assembler.RomBuilder;
+import nand.assembler.RomImage;
+import nand.assembler.process.OutputFormat;
+import nand.assembler.process.RomWriter;
 import nand.vm_translator.process.*;
-import nand.vm_translator.process.command.SegmentType;
+import nand.vm_translator.process.command.Command;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 // This part of project sometimes repeats the assembler,
 // but the separation of both is done intentionally to make the submission more examinable
 public class VMTranslator {
 
+    private static final int FLUSH_SIZE = 1 << 16; // Characters of assembly collected before writing them out
+
     public static void translate(String inputFile, String outputFile) throws Exception {
-        Parser parser = new Parser(inputFile);
-        Code code = new Code();
+        translate(inputFile, outputFile, EnumSet.noneOf(Optimization.class));
+    }
+
+    public static void translate(String inputFile, String outputFile, Set<Optimization> optimizations) throws Exception {
+        translate(inputFile, outputFile, optimizations, Inliner.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param inlineSize Longest function body INLINE inlines, in commands
+     */
+    public static void translate(String inputFile, String outputFile, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        try (OutputStream output = new FileOutputStream(outputFile)) {
+            translate(inputFile, output, optimizations, inlineSize);
+        }
+    }
+
+    public static void translate(String inputFile, OutputStream output, Set<Optimization> optimizations) throws Exception {
+        translate(inputFile, output, optimizations, Inliner.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Translates a file or folder, writing assembly to the stream. Files of a folder are translated in parallel.
+     * Stream is not closed
+     *
+     * @param inlineSize Longest function body INLINE inlines, in commands
+     */
+    public static void translate(String inputFile, OutputStream output, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        List<File> files = Parser.vmFiles(inputFile);
+
+        if (files.size() > 1) {
+            ParallelTranslator.translate(files, output, optimizations, inlineSize);
+            return;
+        }
+        translate(new Parser(inputFile), output, optimizations, inlineSize);
+    }
+
+    public static void translate(InputStream input, OutputStream output, Set<Optimization> optimizations) throws Exception {
+        translate(input, output, optimizations, Inliner.DEFAULT_MAX_SIZE);
+    }
 
-        BufferedWriter outputWriter = new BufferedWriter(new FileWriter(outputFile));
+    /**
+     * Translates VM commands as they come from the input stream, writing assembly as it goes. Streams are not closed
+     *
+     * @param inlineSize Longest function body INLINE inlines, in commands
+     */
+    public static void translate(InputStream input, OutputStream output, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        translate(new Parser(input), output, optimizations, inlineSize);
+    }
+
+    /**
+     * Translates VM bytecode from the remaining bytes of the buffer, writing assembly to the stream. Buffer position
+     * is not changed and the stream is not closed
+     *
+     * @param inlineSize Longest function body INLINE inlines, in commands
+     */
+    public static void translate(ByteBuffer bytecode, OutputStream output, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        translate(new Parser(bytecode), output, optimizations, inlineSize);
+    }
+
+    /**
+     * Translates a file or folder into machine code through relocatable objects, one next to each .vm file,
+     * and writes it in the format to the output file. Objects of files that did not change are reused
+     *
+     * @param inlineSize Longest function body INLINE inlines, in commands
+     */
+    public static void link(String inputFile, String outputFile, OutputFormat format, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        RomImage rom = ParallelTranslator.link(Parser.vmFiles(inputFile), optimizations, inlineSize);
+        new RomWriter().write(rom.words, format, outputFile);
+    }
+
+    /**
+     * Same as link() to a file, writing machine code to the stream. Stream is not closed
+     */
+    public static void link(String inputFile, OutputStream output, OutputFormat format, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        RomImage rom = ParallelTranslator.link(Parser.vmFiles(inputFile), optimizations, inlineSize);
+        new RomWriter().write(rom.words, format, Channels.newChannel(output));
+        output.flush();
+    }
 
-        // Set stack pointer to 256 initially. Bootstrap code.
-        outputWriter.write("""
-                // Set stack pointer to 256
-                @256
-                D=A
-                @SP
-                M=D
-                """);
+    /**
+     * Translates a file or folder straight into machine code, written in the format to the output file.
+     * Instructions are encoded as they are generated, without any assembly text. Output is the same as assembling
+     * the output of translate()
+     *
+     * @param inlineSize Longest function body INLINE inlines, in commands
+     */
+    public static void assemble(String inputFile, String outputFile, OutputFormat format, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        new RomWriter().write(assemble(inputFile, optimizations, inlineSize).words, format, outputFile);
+    }
 
-        // Sys.init is executed first
-        if (parser.currentFileName.equals("Sys.vm")) {
-            outputWriter.write(code.getFunctionCall("Sys.init", 0));
+    /**
+     * Same as assemble() to a file, writing machine code to the stream. Stream is not closed
+     */
+    public static void assemble(String inputFile, OutputStream output, OutputFormat format, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        new RomWriter().write(assemble(inputFile, optimizations, inlineSize).words, format, Channels.newChannel(output));
+        output.flush();
+    }
+
+    /**
+     * Same as assemble() to a file, for VM commands from the input stream. Streams are not closed
+     */
+    public static void assemble(InputStream input, OutputStream output, OutputFormat format, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        new RomWriter().write(assemble(new Parser(input), optimizations, inlineSize).words, format, Channels.newChannel(output));
+        output.flush();
+    }
+
+    /**
+     * Machine code of a file or folder. Files of a folder are translated and encoded in parallel, each into
+     * an object of its own
+     *
+     * @param inlineSize Longest function body INLINE inlines, in commands
+     */
+    public static RomImage assemble(String inputFile, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        List<File> files = Parser.vmFiles(inputFile);
+
+        if (files.size() > 1) {
+            return ParallelTranslator.assemble(files, optimizations, inlineSize);
+        }
+        return assemble(new Parser(inputFile), optimizations, inlineSize);
+    }
+
+    /**
+     * Whether the whole program has to be read before any code is generated
+     */
+    static boolean needsWholeProgram(Set<Optimization> optimizations) {
+        return optimizations.contains(Optimization.DEAD_FUNCTIONS) || optimizations.contains(Optimization.INLINE);
+    }
+
+    private static void translate(Parser parser, OutputStream output, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        TextSink sink = new TextSink(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        StringBuilder buffer = new StringBuilder(2 * FLUSH_SIZE);
+
+        // Assembly is collected in the buffer and written out in pieces
+        translate(parser, new Code(buffer, optimizations), optimizations, inlineSize, () -> {
+            if (buffer.length() >= FLUSH_SIZE) {
+                sink.take(buffer);
+            }
+        });
+        sink.take(buffer);
+        sink.writer.flush();
+    }
+
+    /**
+     * Code hands every instruction over to the ROM as it is generated, where it is encoded right away,
+     * so assembly of the program is never written or parsed
+     */
+    private static RomImage assemble(Parser parser, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        RomBuilder rom = new RomBuilder();
+
+        translate(parser, new Code(new RomOutput(rom), optimizations, ""), optimizations, inlineSize, () -> {});
+        return rom.build();
+    }
+
+    /**
+     * Translates all the commands of the parser with the code, running the step after each command
+     */
+    private static void translate(Parser parser, Code code, Set<Optimization> optimizations, int inlineSize, Step afterCommand) throws Exception {
+        Peephole peephole = optimizations.contains(Optimization.PEEPHOLE) ? new Peephole(code) : null;
+        Consumer<Command> commands = peephole != null ? peephole::write : code::write;
+
+        // Set stack pointer to 256 initially, Sys.init is executed first
+        code.writeBootstrap(parser.currentFileName.equals("Sys.vm"));
+
+        if (needsWholeProgram(optimizations)) {
+            // Whole program is read first, as functions may be called before they are defined
+            List<Command> program = new ArrayList<>();
+            while (parser.hasMoreLines()) {
+                parser.advance();
+                program.add(parser.command());
+            }
+
+            if (optimizations.contains(Optimization.INLINE)) {
+                Inliner inliner = new Inliner(inlineSize);
+                inliner.add(program);
+                program = inliner.inline(program);
+            }
+            if (optimizations.contains(Optimization.DEAD_FUNCTIONS)) {
+                CallGraph callGraph = new CallGraph();
+                callGraph.add(program);
+                program = CallGraph.keep(program, callGraph.reachable());
+            }
+
+            for (Command command : program) {
+                commands.accept(command);
+                afterCommand.run();
+            }
         }
 
         while (parser.hasMoreLines()) {
-            String lines = "";
             parser.advance();
+            commands.accept(parser.command());
+            afterCommand.run();
+        }
 
-            switch (parser.commandType()) {
-                case C_ARITHMETIC -> lines = code.getArithmetic(parser.arg1());
-                case C_PUSH, C_POP -> lines = code.getPushPop(parser.commandType(), SegmentType.valueOfLabel(parser.arg1()), parser.arg2(), false, parser.currentFileName);
-                case C_LABEL -> lines = code.getLabel(parser.arg1());
-                case C_GOTO -> lines = code.getGoTo(parser.arg1());
-                case C_IF -> lines = code.getIfGoTo(parser.arg1());
-                case C_FUNCTION -> lines = code.getFunctionDef(parser.arg1(), parser.arg2());
-                case C_CALL -> lines = code.getFunctionCall(parser.arg1(), parser.arg2());
-                case C_RETURN -> lines = code.getReturn();
-            }
+        if (peephole != null) {
+            peephole.flush();
+        }
+        code.writeEnd();
+    }
 
-            outputWriter.write(String.format("%s\n", lines));
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private static class TextSink {
+        private final Writer writer;
+        private char[] chars = new char[0];
+
+        private TextSink(Writer writer) {
+            this.writer = writer;
         }
 
-        outputWriter.write("""
-                // Script ended loop
-                (SCRIPT_ENDED)
-                @SCRIPT_ENDED
-                0;JMP
-                """);
+        /**
+         * Writes out the assembly collected in the buffer, leaving the buffer empty
+         */
+        private void take(StringBuilder buffer) throws IOException {
+            chars = flush(buffer, writer, chars);
+        }
+    }
+
+    /**
+     * Writes the buffer out and empties it. Characters are copied through the reused array, as the writer
+     * would otherwise make a String of the buffer
+     *
+     * @return Array to reuse next time, grown if it was too small
+     */
+    static char[] flush(StringBuilder buffer, Writer writer, char[] chars) throws IOException {
+        if (chars.length < buffer.length()) {
+            chars = new char[buffer.length()];
+        }
 
-        outputWriter.close();
+        buffer.getChars(0, buffer.length(), chars, 0);
+        writer.write(chars, 0, buffer.length());
+        buffer.setLength(0);
+        return chars;
     }
 }
@@ -0,0 +1,93 @@
+package nand.vm_translator.process;
+
+import nand.vm_translator.process.command.Command;
+import nand.vm_translator.process.command.CommandType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Functions of a program and the functions each of them calls, used by DEAD_FUNCTIONS to leave out
+ * functions the program never reaches
+ */
+public class CallGraph {
+
+    public static final String ENTRY_FUNCTION = "Sys.init";
+
+    private final Map<String, List<String>> callees = new HashMap<>();
+    private String firstFunction; // Without a bootstrap call to Sys.init, the program starts in it
+
+    /**
+     * Adds functions defined by the commands, which are commands of one file or more
+     */
+    public void add(List<Command> commands) {
+        List<String> current = null;
+
+        for (Command command : commands) {
+            if (command.type() == CommandType.C_FUNCTION) {
+                if (firstFunction == null) {
+                    firstFunction = command.name();
+                }
+                current = callees.computeIfAbsent(command.name(), name -> new ArrayList<>());
+            } else if (command.type() == CommandType.C_CALL && current != null) {
+                current.add(command.name());
+            }
+        }
+    }
+
+    /**
+     * Functions reachable through calls from Sys.init and from the first function, which the program falls into
+     * when Sys.init is not called by the bootstrap. Null if there is no Sys.init, then every function is kept
+     */
+    public Set<String> reachable() {
+        if (!callees.containsKey(ENTRY_FUNCTION)) {
+            return null;
+        }
+
+        Set<String> reached = new HashSet<>();
+        ArrayDeque<String> toVisit = new ArrayDeque<>();
+        for (String entry : List.of(ENTRY_FUNCTION, firstFunction)) {
+            if (reached.add(entry)) {
+                toVisit.add(entry);
+            }
+        }
+
+        while (!toVisit.isEmpty()) {
+            for (String callee : callees.getOrDefault(toVisit.poll(), List.of())) {
+                if (reached.add(callee)) {
+                    toVisit.add(callee);
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Commands without the functions that are not in the set. Commands before the first function stay
+     *
+     * @param functions Functions to keep, or null to keep all
+     */
+    public static List<Command> keep(List<Command> commands, Set<String> functions) {
+        if (functions == null) {
+            return commands;
+        }
+
+        List<Command> kept = new ArrayList<>(commands.size());
+        boolean keeping = true;
+
+        for (Command command : commands) {
+            if (command.type() == CommandType.C_FUNCTION) {
+                keeping = functions.contains(command.name());
+            }
+            if (keeping) {
+                kept.add(command);
+            }
+        }
+        return kept;
+    }
+}
@@ -1,240 +1,578 @@
 package nand.vm_translator.process;
 
 import nand.vm_translator.process.command.ArithmeticType;
+import nand.vm_translator.process.command.Command;
 import nand.vm_translator.process.command.CommandType;
 import nand.vm_translator.process.command.SegmentType;
-import java.util.Arrays;
-import java.util.List;
 
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
 
 public class Code {
 
+    // Fixed parts of the templates, appended as they are
+    private static final String PUSH_D = """
+            @SP
+            M=M+1
+            A=M-1
+            M=D
+            """;
+    private static final String POP_TO_D = """
+            @SP
+            AM=M-1
+            D=M
+            """;
+    private static final String RETURN = """
+            // return
+            // save function stack location at R13
+            @LCL
+            D=M
+            @R13
+            M=D
+            // save return address at R14
+            @5
+            A=D-A
+            D=M
+            @R14
+            M=D
+            // pop returned value to ARG place
+            @SP
+            A=M-1
+            D=M
+            @ARG
+            A=M
+            M=D
+            @ARG
+            D=M+1
+            @SP
+            M=D
+            // moving THAT back
+            @R13
+            D=M
+            @1
+            A=D-A
+            D=M
+            @THAT
+            M=D
+            // moving THIS back
+            @R13
+            D=M
+            @2
+            A=D-A
+            D=M
+            @THIS
+            M=D
+            // moving ARG back
+            @R13
+            D=M
+            @3
+            A=D-A
+            D=M
+            @ARG
+            M=D
+            // moving LCL back
+            @R13
+            D=M
+            @4
+            A=D-A
+            D=M
+            @LCL
+            M=D
+            @R14
+            A=M
+            0;JMP
+            """;
+    private static final String SAVE_FRAME = """
+            // push local 0
+            @1
+            D=M
+            @SP
+            M=M+1
+            A=M-1
+            M=D
+            // push argument 0
+            @2
+            D=M
+            @SP
+            M=M+1
+            A=M-1
+            M=D
+            // push this 0
+            @3
+            D=M
+            @SP
+            M=M+1
+            A=M-1
+            M=D
+            // push that 0
+            @4
+            D=M
+            @SP
+            M=M+1
+            A=M-1
+            M=D
+            // argument calculation and placement
+            @5
+            D=A
+            """;
+
+    /**
+     * Shared routine of SHARED_CALLS that builds the caller frame.
+     * Takes function address in D, nArgs in R13 and return address in R14
+     */
+    private static final String CALL_ROUTINE = """
+            // shared call routine
+            ($CALL)
+            @R15
+            M=D
+            // push return address, LCL, ARG, THIS and THAT
+            @R14
+            D=M
+            @SP
+            A=M
+            M=D
+            @LCL
+            D=M
+            @SP
+            AM=M+1
+            M=D
+            @ARG
+            D=M
+            @SP
+            AM=M+1
+            M=D
+            @THIS
+            D=M
+            @SP
+            AM=M+1
+            M=D
+            @THAT
+            D=M
+            @SP
+            AM=M+1
+            M=D
+            // LCL = SP, ARG = SP - 5 - nArgs
+            @SP
+            MD=M+1
+            @LCL
+            M=D
+            @R13
+            D=D-M
+            @5
+            D=D-A
+            @ARG
+            M=D
+            // jump to function
+            @R15
+            A=M
+            0;JMP
+            """;
+
+    /**
+     * Shared routine of SHARED_CALLS that returns from any function
+     */
+    private static final String RETURN_ROUTINE = """
+            // shared return routine
+            ($RETURN)
+            """ + RETURN;
+
+    // Templates that depend on the operation, made once so every use hands over the same String
+    private static final Map<ArithmeticType, String> BINARY = new EnumMap<>(ArithmeticType.class);
+    private static final Map<ArithmeticType, String> CACHED_BINARY = new EnumMap<>(ArithmeticType.class);
+    private static final Map<ArithmeticType, String> JUMP_IF = new EnumMap<>(ArithmeticType.class);
+    private static final Map<ArithmeticType, String> JUMP_UNLESS = new EnumMap<>(ArithmeticType.class);
+
+    static {
+        for (ArithmeticType operation : ArithmeticType.values()) {
+            switch (operation) {
+                case A_ADD, A_SUB, A_AND, A_OR -> {
+                    BINARY.put(operation, """
+                            D=M
+                            M=0
+                            @SP
+                            AM=M-1
+                            M=M""" + operation.operand + "D\n");
+                    CACHED_BINARY.put(operation, """
+                            @SP
+                            AM=M-1
+                            D=M""" + operation.operand + "D\n");
+                }
+                case A_EQ, A_GT, A_LT -> JUMP_IF.put(operation, "D;J" + operation.operand + "\n");
+            }
+        }
+        JUMP_UNLESS.put(ArithmeticType.A_EQ, "D;JNE\n");
+        JUMP_UNLESS.put(ArithmeticType.A_GT, "D;JLE\n");
+        JUMP_UNLESS.put(ArithmeticType.A_LT, "D;JGE\n");
+    }
+
+    // Pointer locations up to this index are reached by incrementing A, which is shorter than adding the index
+    // through D and R15
+    private static final int MAX_POINTER_STEPS = 6;
+    // Same for values pushed, for which adding the index only takes D and no R15
+    private static final int MAX_PUSH_STEPS = 2;
+
+    private final CodeOutput out;
+    private final StringBuilder text; // Buffer of TextOutput, null for other outputs
+    private final StringBuilder symbol = new StringBuilder(); // Generated label or variable being put together
+    private final Set<Optimization> optimizations;
+    private final String labelPrefix; // Put before the counters in generated labels
+
     int arithmeticOperationCount = 0;
     int functionCallCount = 0;
 
+    // Shared routines that are used, so they are appended at the end
+    private boolean callRoutineUsed = false;
+    private boolean returnRoutineUsed = false;
+    private final Set<ArithmeticType> comparisonRoutinesUsed = EnumSet.noneOf(ArithmeticType.class);
+
+    // With CACHE_TOP, whether the value on top of the stack is in D instead of memory. Stack pointer is then
+    // one less than it would be otherwise
+    private final boolean cacheTop;
+    private boolean topInD = false;
+
+    /**
+     * Responsible for command translation to ASM instructions, appended to a buffer of its own
+     */
+    public Code() {
+        this(new StringBuilder(), EnumSet.noneOf(Optimization.class));
+    }
+
     /**
      * Responsible for command translation to ASM instructions
+     *
+     * @param out Buffer the instructions are appended to. Code of every command ends with a new line
+     * @param optimizations Optional ways of translating to use
      */
-    public Code() {}
+    public Code(StringBuilder out, Set<Optimization> optimizations) {
+        this(out, optimizations, "");
+    }
 
     /**
-     * Returns the whole code of supplied stack arithmetic operation
+     * Responsible for command translation to ASM instructions of one of the files translated separately
+     *
+     * @param out Buffer the instructions are appended to. Code of every command ends with a new line
+     * @param optimizations Optional ways of translating to use
+     * @param labelPrefix Text that makes generated labels unique among files, as each file counts them from 0
      */
-    public String getArithmetic(String command) {
-        ArithmeticType operation = ArithmeticType.valueOfLabel(command);
-        arithmeticOperationCount += 1;
+    public Code(StringBuilder out, Set<Optimization> optimizations, String labelPrefix) {
+        this(new TextOutput(out), optimizations, labelPrefix);
+    }
 
-        if (operation == null) {
-            return "";
+    /**
+     * Responsible for command translation to instructions, handed over to the output as they are generated
+     *
+     * @param out Assembly text or machine code the instructions go to
+     * @param optimizations Optional ways of translating to use
+     * @param labelPrefix Text that makes generated labels unique among files, as each file counts them from 0
+     */
+    public Code(CodeOutput out, Set<Optimization> optimizations, String labelPrefix) {
+        this.out = out;
+        this.text = out instanceof TextOutput textOutput ? textOutput.text : null;
+        this.labelPrefix = labelPrefix;
+        this.optimizations = optimizations.isEmpty() ? EnumSet.noneOf(Optimization.class) : EnumSet.copyOf(optimizations);
+        this.cacheTop = this.optimizations.contains(Optimization.CACHE_TOP);
+    }
+
+    /**
+     * Buffer the instructions are appended to, null if they are not written as text
+     */
+    public StringBuilder output() {
+        return text;
+    }
+
+    /**
+     * Appends the code of any command
+     */
+    public void write(Command command) {
+        switch (command.type()) {
+            case C_ARITHMETIC -> writeArithmetic(command.operation());
+            case C_PUSH, C_POP -> writePushPop(command);
+            case C_LABEL -> writeLabel(command.name());
+            case C_GOTO -> writeGoTo(command.name());
+            case C_IF -> writeIfGoTo(command.name());
+            case C_FUNCTION -> writeFunctionDef(command.name(), command.index());
+            case C_CALL -> writeFunctionCall(command.name(), command.index());
+            case C_RETURN -> writeReturn();
         }
+    }
 
-        // Arithmetic operations start by decrementing stack pointer and end by incrementing it
-        return String.format("""
-                // %s
-                @SP
-                AM=M-1
-                %s
+    /**
+     * Sets stack pointer to 256, then calls Sys.init if asked to
+     */
+    public void writeBootstrap(boolean callSysInit) {
+        out.lines("""
+                // Set stack pointer to 256
+                @256
+                D=A
                 @SP
-                M=M+1""", operation.label, getDynamicArithmetic(operation));
+                M=D
+                """);
+
+        if (callSysInit) {
+            writeFunctionCall("Sys.init", 0);
+        }
+    }
+
+    /**
+     * Ends code of a file that is translated separately, so nothing is left held back for the next file
+     */
+    public void writeFileEnd() {
+        spillTop();
     }
 
     /**
-     * Returns the whole code of supplied pop/push operation
+     * Shared routines used by code of a file that was translated separately are written by writeEnd() of this one
      */
-    public String getPushPop(CommandType commandType, SegmentType segment, int index, boolean movingPointer, Object... additionalParams) {
-        String valueInstruction = "D=M"; // By default, memory location is based on value in another field
+    public void addRoutinesUsedBy(Code fileCode) {
+        callRoutineUsed |= fileCode.callRoutineUsed;
+        returnRoutineUsed |= fileCode.returnRoutineUsed;
+        comparisonRoutinesUsed.addAll(fileCode.comparisonRoutinesUsed);
+    }
 
-        if (segment == null) {
-            return "";
-        } else if (segment == SegmentType.S_CONSTANT) {
-            return pushConstantCode(commandType, segment, Integer.toString(index));
-        } else if (Arrays.asList(SegmentType.S_TEMP, SegmentType.S_STATIC, SegmentType.S_POINTER).contains(segment)) {
-            valueInstruction = "D=A"; // Memory location is based on index provided
+    /**
+     * Same as addRoutinesUsedBy(Code) for code that is only known by the symbols it uses, like an object assembled
+     * earlier
+     */
+    public void addRoutinesUsedBy(String[] symbols) {
+        for (String symbol : symbols) {
+            switch (symbol) {
+                case "$CALL" -> callRoutineUsed = true;
+                case "$RETURN" -> returnRoutineUsed = true;
+                case "$EQ" -> comparisonRoutinesUsed.add(ArithmeticType.A_EQ);
+                case "$GT" -> comparisonRoutinesUsed.add(ArithmeticType.A_GT);
+                case "$LT" -> comparisonRoutinesUsed.add(ArithmeticType.A_LT);
+            }
         }
+    }
 
-        switch (commandType) {
-            case C_PUSH:
-                StringBuilder push = new StringBuilder();
+    /**
+     * Endless loop the program stays in after it ends, followed by the shared routines that were used
+     */
+    public void writeEnd() {
+        spillTop();
+        out.lines("""
+                // Script ended loop
+                (SCRIPT_ENDED)
+                @SCRIPT_ENDED
+                0;JMP
+                """);
 
-                // Comment and pointer selection
-                push.append(String.format("""
-                        // %s %s %3$s
-                        @%4$s
-                        """, commandType.label, segment.label, index, segment.startIndex));
+        if (callRoutineUsed) {
+            out.lines(CALL_ROUTINE);
+        }
+        if (returnRoutineUsed) {
+            out.lines(RETURN_ROUTINE);
+        }
+        for (ArithmeticType operation : comparisonRoutinesUsed) {
+            writeComparisonRoutine(operation);
+        }
+    }
 
-                if (segment.equals(SegmentType.S_STATIC)) {
-                    // Static variable is referenced using filename on push
-                    String vmFile = (String) additionalParams[0];
-                    push.append(String.format("@%s.%s\n", vmFile.replace(".vm", ""), index));
-                } else if (! movingPointer) {
-                    // Push is used differently by caller
-                    push.append(String.format("""
-                        %1$s
-                        @%2$s
-                        A=D+A
-                        """, valueInstruction, index));
-                }
+    /**
+     * Appends the whole code of supplied stack arithmetic operation, or nothing if there is no operation
+     */
+    public void writeArithmetic(ArithmeticType operation) {
+        arithmeticOperationCount += 1;
 
-                // Change value and increment SP
-                push.append("""                        
-                        D=M
-                        @SP
-                        A=M
-                        M=D
-                        @SP
-                        M=M+1
-                        """);
+        if (operation == null) {
+            return;
+        }
 
-                return push.toString();
-            case C_POP:
-                if (segment.equals(SegmentType.S_STATIC)) {
-                    // Static variable ir referenced using filename on pop
-                    String vmFile = (String) additionalParams[0];
-                    return String.format("""
-                        // %s %s %3$s
-                        @SP
-                        A=M-1
-                        D=M
-                        @%4$s.%3$s
-                        M=D
-                        @SP
-                        M=M-1""", commandType.label, segment.label, index, vmFile.replace(".vm", ""));
-                } else {
-                    return String.format("""
-                        // %s %s %3$s
-                        @%4$s
-                        %5$s
-                        @%3$s
-                        D=D+A
-                        // Save the location temporarily
-                        @R15
-                        M=D
-                        @SP
-                        A=M-1
-                        D=M
-                        @R15
-                        A=M
-                        M=D
-                        @SP
-                        M=M-1""", commandType.label, segment.label, index, segment.startIndex, valueInstruction);
-                }
-            default:
-                return "";
+        boolean comparison = operation == ArithmeticType.A_EQ || operation == ArithmeticType.A_GT || operation == ArithmeticType.A_LT;
+        if (comparison && optimizations.contains(Optimization.SHARED_COMPARISONS)) {
+            // Shared routines work on the stack in memory
+            spillTop();
+            writeSharedComparison(operation);
+            return;
+        }
+        if (cacheTop) {
+            writeCachedArithmetic(operation);
+            return;
+        }
+
+        // Arithmetic operations start by decrementing stack pointer and end by incrementing it
+        out.comment().append("// ").append(operation.label).append('\n');
+        out.lines("""
+                @SP
+                AM=M-1
+                """);
+
+        switch (operation) {
+            case A_NOT -> out.lines("M=!M\n");
+            case A_NEG -> out.lines("M=-M\n");
+            case A_ADD, A_SUB, A_AND, A_OR -> out.lines(BINARY.get(operation));
+            default -> writeComparison(operation);
         }
+
+        out.lines("""
+                @SP
+                M=M+1
+                """);
     }
 
+    /**
+     * Appends the whole code of supplied pop/push operation
+     *
+     * @param fileName Name of the .vm file, which static variables are named after
+     */
+    public void writePushPop(CommandType commandType, SegmentType segment, int index, String fileName) {
+        writePushPop(Command.pushPop(commandType, segment, index, fileName));
+    }
 
     /**
-     * Create label
+     * Appends the whole code of a pop/push command of a segment or of the stack
+     */
+    private void writePushPop(Command command) {
+        if (command.segment() == null && !command.stack()) {
+            return;
+        }
+        if (cacheTop) {
+            writeCachedPushPop(command);
+            return;
+        }
+        appendComment(command);
+
+        // Constants are pushed even by pop, as before
+        if (command.type() == CommandType.C_PUSH || command.segment() == SegmentType.S_CONSTANT) {
+            appendValue(command);
+            out.lines(PUSH_D);
+        } else if (isSegmentBased(command) && command.index() > MAX_POINTER_STEPS) {
+            // Destination address is calculated first, as D then holds the value
+            appendAddressToR15(command);
+            out.lines(POP_TO_D);
+            out.lines("""
+                    @R15
+                    A=M
+                    M=D
+                    """);
+        } else {
+            out.lines(POP_TO_D);
+            appendStore(command);
+        }
+    }
+
+    /**
+     * Appends a push directly followed by a pop as a move from one location to the other, without the stack
+     *
+     * @param push Push of any segment
+     * @param pop Pop to any segment but constant
      */
-    public String getLabel(String label) {
-        return String.format("""
-                // label %1$s
-                (%1$s)""", label);
+    public void writeMove(Command push, Command pop) {
+        spillTop();
+        out.comment().append("// ").append(push).append("; ").append(pop).append('\n');
+
+        if (isSegmentBased(pop) && pop.index() > MAX_POINTER_STEPS) {
+            // Destination address is calculated first, as D then holds the value
+            appendAddressToR15(pop);
+            appendValue(push);
+            out.lines("""
+                    @R15
+                    A=M
+                    M=D
+                    """);
+        } else {
+            appendValue(push);
+            appendStore(pop);
+        }
     }
 
+    /**
+     * Create label
+     */
+    public void writeLabel(String label) {
+        spillTop();
+        out.comment().append("// label ").append(label).append('\n');
+        out.label(label);
+    }
 
     /**
      * Get goto code for label
      */
-    public String getGoTo(String label) {
-        return String.format("""
-                // goto %1$s
-                @%1$s
-                0;JMP""", label);
+    public void writeGoTo(String label) {
+        spillTop();
+        out.comment().append("// goto ").append(label).append('\n');
+        out.at(label);
+        out.lines("0;JMP\n");
     }
 
-
     /**
      * Get if-goto code for label
      */
-    public String getIfGoTo(String label) {
-        return String.format("""
-                // if goto %1$s
-                @SP
-                AM=M-1
-                D=M
-                @%1$s
-                D;JNE""", label);
+    public void writeIfGoTo(String label) {
+        out.comment().append("// if goto ").append(label).append('\n');
+        popToD();
+        out.at(label);
+        out.lines("D;JNE\n");
     }
 
+    /**
+     * Get code of "not" followed by if-goto: jump to the label if the value popped is not -1 (true),
+     * as its bitwise not is then not 0
+     */
+    public void writeIfNotGoTo(String label) {
+        out.comment().append("// not; if goto ").append(label).append('\n');
+        popToD();
+        out.lines("D=!D\n");
+        out.at(label);
+        out.lines("D;JNE\n");
+    }
 
     /**
-     * Create return. Get back caller frame content to parent memory
+     * Get code of eq, gt or lt followed by "not" and if-goto: jump to the label if the comparison is false
      */
-    public String getReturn() {
-        StringBuilder lines = new StringBuilder("""
-                // return
-                // save function stack location at R13
-                @LCL
-                D=M
-                @R13
-                M=D
-                // save return address at R14
-                @5
-                A=D-A
-                D=M
-                @R14
-                M=D
-                // pop returned value to ARG place
-                @SP
-                A=M-1
-                D=M
-                @ARG
-                A=M
-                M=D
-                @ARG
-                D=M+1
+    public void writeIfNotComparisonGoTo(ArithmeticType comparison, String label) {
+        out.comment().append("// ").append(comparison.label).append("; not; if goto ").append(label).append('\n');
+        popToD();
+        out.lines("""
                 @SP
-                M=D
+                AM=M-1
+                D=M-D
                 """);
+        out.at(label);
+        out.lines(JUMP_UNLESS.get(comparison));
+    }
 
-        // Move previously saved pointers back in place
-        List<String> pointersToMove = Arrays.asList("THAT", "THIS", "ARG", "LCL");
-        int backIndex = 0;
-        for (String pointer: pointersToMove) {
-            backIndex++;
-            lines.append(String.format("""
-                    // moving %1$s back
-                    @R13
-                    D=M
-                    @%2$s
-                    A=D-A
-                    D=M
-                    @%1$s
-                    M=D
-                    """, pointer, backIndex));
+    /**
+     * Create return. Get back caller frame content to parent memory
+     */
+    public void writeReturn() {
+        spillTop();
+        if (optimizations.contains(Optimization.SHARED_CALLS)) {
+            returnRoutineUsed = true;
+            out.lines("""
+                    // return
+                    @$RETURN
+                    0;JMP
+                    """);
+            return;
         }
 
-        // Go to return address
-        lines.append("""
-                @R14
-                A=M
-                0;JMP
-                """);
-
-        return lines.toString();
+        out.lines(RETURN);
     }
 
-
     /**
      * Create caller frame for a function
      */
-    public String getFunctionCall(String functionName, int nArgs) {
+    public void writeFunctionCall(String functionName, int nArgs) {
+        spillTop();
         functionCallCount += 1;
-        String returnAddr = String.format("return-addr-%s-%s", functionName, functionCallCount);
-
-        return String.format("""
-                // call function %s %s
-                %3$s
-                %4$s
-                %5$s
-                %6$s
-                %7$s
-                // argument calculation and placement
-                @5
-                D=A
-                @%2$s
+
+        out.comment().append("// call function ").append(functionName).append(' ').append(nArgs).append('\n');
+
+        if (optimizations.contains(Optimization.SHARED_CALLS)) {
+            writeSharedCall(functionName, nArgs);
+            return;
+        }
+
+        out.comment().append("// push label ").append(returnAddress(functionName)).append('\n');
+        out.at(returnAddress(functionName));
+        out.lines("D=A\n");
+        out.lines(PUSH_D);
+        out.lines(SAVE_FRAME);
+        out.at(nArgs);
+        out.lines("""
                 D=D+A
                 @SP
                 D=M-D
@@ -246,91 +584,398 @@ public class Code {
                 @LCL
                 M=D
                 // Redirect to function
-                @%1$s
-                0;JMP
-                (%8$s)""", functionName, nArgs,
-                pushConstantCode(CommandType.C_PUSH, SegmentType.S_CONSTANT, returnAddr),
-                getPushPop(CommandType.C_PUSH, SegmentType.S_LOCAL, 0, true),
-                getPushPop(CommandType.C_PUSH, SegmentType.S_ARGUMENT, 0, true),
-                getPushPop(CommandType.C_PUSH, SegmentType.S_THIS, 0, true),
-                getPushPop(CommandType.C_PUSH, SegmentType.S_THAT, 0, true),
-                returnAddr
-        );
+                """);
+        out.at(functionName);
+        out.lines("0;JMP\n");
+        out.label(returnAddress(functionName));
     }
 
     /**
-     * Get header of function like '(functionName)'
+     * Get header of function like '(functionName)', followed by nVars locals set to 0
      */
-    public String getFunctionDef(String functionName, int nArgs) {
-        return String.format("""
-                // function %1$s %2$s
-                (%1$s)""", functionName, nArgs);
+    public void writeFunctionDef(String functionName, int nVars) {
+        spillTop();
+        out.comment().append("// function ").append(functionName).append(' ').append(nVars).append('\n');
+        out.label(functionName);
+
+        if (nVars > 0) {
+            // Zeroes are written in a row, then stack pointer is moved past them once
+            out.lines("""
+                    @SP
+                    A=M
+                    """);
+            for (int i = 0; i < nVars; i++) {
+                out.lines("""
+                        M=0
+                        A=A+1
+                        """);
+            }
+            out.lines("""
+                    D=A
+                    @SP
+                    M=D
+                    """);
+        }
     }
 
 
     /**
-     * Returns the changing part of arithmetic operation
+     * Arithmetic of CACHE_TOP: the second value is popped from memory and the result stays in D
      */
-    private String getDynamicArithmetic(ArithmeticType operation) {
+    private void writeCachedArithmetic(ArithmeticType operation) {
+        out.comment().append("// ").append(operation.label).append('\n');
+        loadTop();
+
         switch (operation) {
-            case A_NOT: return "M=!M";
-            case A_NEG: return "M=-M";
-            case A_ADD: case A_SUB: case A_AND: case A_OR: return arithmeticCode(operation);
-            default: return comparisonCode(operation);
+            case A_NOT -> out.lines("D=!D\n");
+            case A_NEG -> out.lines("D=-D\n");
+            case A_ADD, A_SUB, A_AND, A_OR -> out.lines(CACHED_BINARY.get(operation));
+            default -> {
+                out.lines("""
+                        @SP
+                        AM=M-1
+                        D=M-D
+                        """);
+                out.at(comparisonLabel("", operation));
+                out.lines(JUMP_IF.get(operation));
+                out.lines("D=0\n");
+                out.at(comparisonLabel("END_", operation));
+                out.lines("0;JMP\n");
+                out.label(comparisonLabel("", operation));
+                out.lines("D=-1\n");
+                out.label(comparisonLabel("END_", operation));
+            }
+        }
+    }
+
+    /**
+     * Push and pop of CACHE_TOP. Push spills the cached value and loads the new one to D, pop stores D
+     */
+    private void writeCachedPushPop(Command command) {
+        appendComment(command);
+
+        // Constants are pushed even by pop, as before
+        if (command.type() == CommandType.C_PUSH || command.segment() == SegmentType.S_CONSTANT) {
+            spillTop();
+            appendValue(command);
+            topInD = true;
+            return;
+        }
+
+        loadTop();
+        appendStore(command);
+        topInD = false;
+    }
+
+    /**
+     * With CACHE_TOP, writes the value cached in D to the stack, as code that follows expects it in memory
+     */
+    private void spillTop() {
+        if (topInD) {
+            out.comment().append("// spill top of stack\n");
+            out.lines(PUSH_D);
+            topInD = false;
         }
     }
 
+    /**
+     * With CACHE_TOP, makes sure the value on top of the stack is in D
+     */
+    private void loadTop() {
+        if (!topInD) {
+            out.lines(POP_TO_D);
+            topInD = true;
+        }
+    }
+
+    /**
+     * Pops the value on top of the stack to D, which it may be in already
+     */
+    private void popToD() {
+        if (!topInD) {
+            out.lines(POP_TO_D);
+        }
+        topInD = false;
+    }
 
     /**
-     * Returns code of pushed constant (can also be labeled)
+     * Call site of SHARED_CALLS: return address to R14, nArgs to R13 and function address to D, then the shared routine
      */
-    private String pushConstantCode(CommandType commandType, SegmentType segment, String constant) {
-        return String.format("""
-                    // %s %s %3$s
-                    @%3$s
+    private void writeSharedCall(String functionName, int nArgs) {
+        callRoutineUsed = true;
+
+        out.at(returnAddress(functionName));
+        out.lines("""
+                D=A
+                @R14
+                M=D
+                """);
+
+        // 0 and 1 can be written to memory without going through D
+        if (nArgs <= 1) {
+            out.lines(nArgs == 0 ? "@R13\nM=0\n" : "@R13\nM=1\n");
+        } else {
+            out.at(nArgs);
+            out.lines("""
                     D=A
-                    @SP
-                    A=M
+                    @R13
                     M=D
-                    @SP
-                    M=M+1""", commandType.label, constant.matches("-?\\d+") ? segment.label : "label", constant);
+                    """);
+        }
+
+        out.at(functionName);
+        out.lines("""
+                D=A
+                @$CALL
+                0;JMP
+                """);
+        out.label(returnAddress(functionName));
+    }
+
+    /**
+     * Call site of SHARED_COMPARISONS: return address to D, then the shared routine of the comparison
+     */
+    private void writeSharedComparison(ArithmeticType operation) {
+        comparisonRoutinesUsed.add(operation);
+
+        out.comment().append("// ").append(operation.label).append('\n');
+        out.at(symbol().append("$RET_").append(labelPrefix).append(arithmeticOperationCount));
+        out.lines("D=A\n");
+        out.at(symbol().append('$').append(operation.operand));
+        out.lines("0;JMP\n");
+        out.label(symbol().append("$RET_").append(labelPrefix).append(arithmeticOperationCount));
     }
 
+    /**
+     * Shared routine of SHARED_COMPARISONS. Takes return address in D, replaces the two values on top of the stack
+     * with -1 if the comparison holds, 0 otherwise
+     */
+    private void writeComparisonRoutine(ArithmeticType operation) {
+        String jump = operation.operand;
+
+        out.comment().append("// shared ").append(operation.label).append(" routine\n");
+        out.label(symbol().append('$').append(jump));
+        out.lines("""
+                @R13
+                M=D
+                @SP
+                AM=M-1
+                D=M
+                M=0
+                A=A-1
+                D=M-D
+                M=-1
+                """);
+        out.at(symbol().append('$').append(jump).append("_END"));
+        out.lines(JUMP_IF.get(operation));
+        out.lines("""
+                @SP
+                A=M-1
+                M=0
+                """);
+        out.label(symbol().append('$').append(jump).append("_END"));
+        out.lines("""
+                @R13
+                A=M
+                0;JMP
+                """);
+    }
 
     /**
      * Code that simulates less than/grater than/equals operations
      */
-    private String comparisonCode(ArithmeticType operation) {
-        return String.format(
-                """
+    private void writeComparison(ArithmeticType operation) {
+        out.lines("""
                 D=M
                 M=0
                 @SP
                 AM=M-1
                 D=M-D
-                @%2$s_%1$s
-                D;J%2$s
+                """);
+        out.at(comparisonLabel("", operation));
+        out.lines(JUMP_IF.get(operation));
+        out.lines("""
                 @SP
                 A=M
                 M=0
-                @END_%2$s_%1$s
-                0;JMP
-                (%2$s_%1$s)
+                """);
+        out.at(comparisonLabel("END_", operation));
+        out.lines("0;JMP\n");
+        out.label(comparisonLabel("", operation));
+        out.lines("""
                 @SP
                 A=M
                 M=-1
-                (END_%2$s_%1$s)""", arithmeticOperationCount, operation.operand);
+                """);
+        out.label(comparisonLabel("END_", operation));
     }
 
     /**
-     * Code that simulates add/subtract/and/or arithmetic operations
+     * Appends code that loads the number into D. Negative numbers do not fit in an A instruction, so they are negated
      */
-    private String arithmeticCode(ArithmeticType operation) {
-        return String.format("""
-                D=M
-                M=0
-                @SP
-                AM=M-1
-                M=M%sD""", operation.operand);
+    private void appendConstant(int value) {
+        if (value >= -1 && value <= 1) {
+            out.lines(value == 0 ? "D=0\n" : value == 1 ? "D=1\n" : "D=-1\n");
+        } else if (value > 0) {
+            out.at(value);
+            out.lines("D=A\n");
+        } else if (value == Short.MIN_VALUE) {
+            out.lines("@32767\nD=!A\n");
+        } else {
+            out.at(-value);
+            out.lines("D=-A\n");
+        }
+    }
+
+    /**
+     * Appends code that loads the value a push of the location would push into D
+     */
+    private void appendValue(Command location) {
+        SegmentType segment = location.segment();
+        int index = location.index();
+
+        if (segment == SegmentType.S_CONSTANT) {
+            appendConstant(index);
+            return;
+        }
+
+        if (location.stack() && index <= MAX_PUSH_STEPS) {
+            appendStackAddress(index);
+        } else if (location.stack()) {
+            out.lines("@SP\nD=M\n");
+            out.at(index);
+            out.lines("A=D-A\n");
+        } else if (isSegmentBased(location) && index <= MAX_PUSH_STEPS) {
+            appendPointerAddress(segment, index);
+        } else if (isSegmentBased(location)) {
+            out.at(segment.startIndex);
+            out.lines("D=M\n");
+            out.at(index);
+            out.lines("A=D+A\n");
+        } else {
+            appendFixedAddress(segment, index, location.fileName());
+        }
+        out.lines("D=M\n");
+    }
+
+    /**
+     * Appends code that writes D to the location. Address of local, argument, this, that and stack is stepped to when
+     * it is close, otherwise D waits in R14 while the address is calculated
+     */
+    private void appendStore(Command location) {
+        SegmentType segment = location.segment();
+        int index = location.index();
+        boolean stack = location.stack();
+
+        if (!stack && !isSegmentBased(location)) {
+            appendFixedAddress(segment, index, location.fileName());
+        } else if (stack && index <= MAX_POINTER_STEPS + 1) {
+            appendStackAddress(index);
+        } else if (!stack && index <= MAX_POINTER_STEPS) {
+            appendPointerAddress(segment, index);
+        } else {
+            out.lines("@R14\nM=D\n");
+            appendAddressToR15(location);
+            out.lines("""
+                    @R14
+                    D=M
+                    @R15
+                    A=M
+                    """);
+        }
+        out.lines("M=D\n");
+    }
+
+    /**
+     * Appends code that sets A to the address of a local, argument, this or that location, without using D
+     */
+    private void appendPointerAddress(SegmentType segment, int index) {
+        out.at(segment.startIndex);
+        out.lines(index == 0 ? "A=M\n" : "A=M+1\n");
+        for (int i = 1; i < index; i++) {
+            out.lines("A=A+1\n");
+        }
+    }
+
+    /**
+     * Appends code that sets A to the address of a value on the stack, counted from the top, without using D
+     */
+    private void appendStackAddress(int index) {
+        out.lines("@SP\nA=M-1\n");
+        for (int i = 1; i < index; i++) {
+            out.lines("A=A-1\n");
+        }
+    }
+
+    /**
+     * Appends code that saves the address of a local, argument, this, that or stack location to R15
+     */
+    private void appendAddressToR15(Command location) {
+        boolean stack = location.stack();
+
+        if (stack) {
+            out.lines("@SP\n");
+        } else {
+            out.at(location.segment().startIndex);
+        }
+        out.lines("D=M\n");
+        out.at(location.index());
+        out.lines(stack ? "D=D-A\n@R15\nM=D\n" : "D=D+A\n@R15\nM=D\n");
+    }
+
+    /**
+     * Appends '@address' of a static, temp or pointer location, which is known before the program runs
+     */
+    private void appendFixedAddress(SegmentType segment, int index, String fileName) {
+        if (segment == SegmentType.S_STATIC) {
+            appendStatic(fileName, index);
+        } else {
+            out.at(segment.startIndex + index);
+        }
+    }
+
+    /**
+     * Local, argument, this and that are located through a pointer, other segments are at fixed addresses
+     */
+    private static boolean isSegmentBased(Command location) {
+        return !location.stack() && switch (location.segment()) {
+            case S_LOCAL, S_ARGUMENT, S_THIS, S_THAT -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Appends the comment of a pop/push command
+     */
+    private void appendComment(Command command) {
+        out.comment().append("// ").append(command.type().label).append(' ').append(command.segmentLabel()).append(' ')
+                .append(command.index()).append('\n');
+    }
+
+    /**
+     * Appends '@File.index' for a static variable of the file
+     */
+    private void appendStatic(String fileName, int index) {
+        int nameEnd = fileName.endsWith(".vm") ? fileName.length() - 3 : fileName.length();
+        out.at(symbol().append(fileName, 0, nameEnd).append('.').append(index));
+    }
+
+    private StringBuilder returnAddress(String functionName) {
+        return symbol().append("return-addr-").append(functionName).append('-').append(labelPrefix).append(functionCallCount);
+    }
+
+    /**
+     * Label of the jump of comparison code, unique by the count of arithmetic operations
+     */
+    private StringBuilder comparisonLabel(String start, ArithmeticType operation) {
+        return symbol().append(start).append(operation.operand).append('_').append(labelPrefix).append(arithmeticOperationCount);
+    }
+
+    /**
+     * Empty buffer to put a generated label or variable together in
+     */
+    private StringBuilder symbol() {
+        symbol.setLength(0);
+        return symbol;
     }
 }
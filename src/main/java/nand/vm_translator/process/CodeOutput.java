@@ -0,0 +1,34 @@
+package nand.vm_translator.process;
+
+/**
+ * Receives the instructions Code generates, either as assembly text or encoded into machine code right away.
+ * Fixed templates are handed over as the same String every time, so an output that encodes them does it once
+ */
+public interface CodeOutput {
+
+    /**
+     * Whole lines of assembly that never change, like the templates of Code
+     */
+    void lines(String template);
+
+    /**
+     * '@address' of a number
+     */
+    void at(int address);
+
+    /**
+     * '@symbol' of a label or variable. The sequence may be reused by Code once this returns
+     */
+    void at(CharSequence symbol);
+
+    /**
+     * '(label)'. The sequence may be reused by Code once this returns
+     */
+    void label(CharSequence label);
+
+    /**
+     * Buffer a comment line is appended to, from '//' to the new line. Machine code has no comments, so the buffer
+     * may be thrown away
+     */
+    StringBuilder comment();
+}
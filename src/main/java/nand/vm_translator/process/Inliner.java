@@ -0,0 +1,202 @@
+package nand.vm_translator.process;
+
+import nand.vm_translator.process.command.ArithmeticType;
+import nand.vm_translator.process.command.Command;
+import nand.vm_translator.process.command.CommandType;
+import nand.vm_translator.process.command.SegmentType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pass of INLINE over the whole program. Calls of small leaf functions are replaced by the function body,
+ * which works on the caller's stack:
+ *  - locals are pushed as zeros above the arguments, followed by THIS and THAT if the body changes them
+ *  - argument and local accesses become accesses of the stack itself, counted from the top of the stack
+ *  - return restores THIS and THAT, then drops everything below the returned value down to where argument 0 was
+ * Only bodies of straight-line code ending with the only return are inlined, so the stack depth at every command
+ * is known here
+ */
+public class Inliner {
+
+    public static final int DEFAULT_MAX_SIZE = 8; // Commands of a body, without function and return
+
+    private final int maxSize;
+    private final Map<String, Body> bodies = new HashMap<>();
+
+    /**
+     * @param maxSize Longest body that is inlined, in commands without function and return
+     */
+    public Inliner(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Finds functions that can be inlined among the commands, which are commands of one file or more
+     */
+    public void add(List<Command> commands) {
+        for (int i = 0; i < commands.size(); i++) {
+            Command function = commands.get(i);
+            if (function.type() != CommandType.C_FUNCTION) {
+                continue;
+            }
+
+            int end = i + 1;
+            while (end < commands.size() && commands.get(end).type() != CommandType.C_FUNCTION) {
+                end++;
+            }
+
+            Body body = Body.of(function.index(), commands.subList(i + 1, end), maxSize);
+            if (body != null) {
+                bodies.put(function.name(), body);
+            }
+            i = end - 1;
+        }
+    }
+
+    /**
+     * Commands with calls of inlinable functions replaced by their bodies. Functions themselves stay
+     */
+    public List<Command> inline(List<Command> commands) {
+        List<Command> inlined = new ArrayList<>(commands.size());
+
+        for (Command command : commands) {
+            Body body = command.type() == CommandType.C_CALL ? bodies.get(command.name()) : null;
+
+            // Call with fewer arguments than the body uses is left to fail as it would
+            if (body == null || body.arguments > command.index()) {
+                inlined.add(command);
+            } else {
+                body.expand(command.index(), inlined);
+            }
+        }
+        return inlined;
+    }
+
+    /**
+     * Body of an inlinable function
+     *
+     * @param locals nVars of the function
+     * @param arguments Arguments the body uses, which is the highest argument index + 1
+     * @param savedPointers Pointer indexes the body pops to, saved on the stack while it runs
+     * @param commands Commands without the return
+     */
+    private record Body(int locals, int arguments, List<Integer> savedPointers, List<Command> commands) {
+
+        /**
+         * Body of a function, or null if it cannot be inlined
+         */
+        private static Body of(int locals, List<Command> commands, int maxSize) {
+            int size = commands.size() - 1;
+            if (size < 0 || size > maxSize || commands.get(size).type() != CommandType.C_RETURN) {
+                return null;
+            }
+
+            int depth = 0;
+            int arguments = 0;
+            List<Integer> savedPointers = new ArrayList<>();
+
+            for (Command command : commands.subList(0, size)) {
+                switch (command.type()) {
+                    case C_PUSH -> depth++;
+                    case C_POP -> {
+                        // Pop to constant pushes in Code, and the frame below the body is not popped
+                        if (command.segment() == SegmentType.S_CONSTANT || depth == 0) {
+                            return null;
+                        }
+                        depth--;
+                    }
+                    case C_ARITHMETIC -> {
+                        if (command.operation() != ArithmeticType.A_NEG && command.operation() != ArithmeticType.A_NOT) {
+                            if (depth < 2) {
+                                return null;
+                            }
+                            depth--;
+                        } else if (depth < 1) {
+                            return null;
+                        }
+                    }
+                    // Leaf functions without jumps only
+                    default -> {
+                        return null;
+                    }
+                }
+
+                if (command.segment() == SegmentType.S_ARGUMENT) {
+                    arguments = Math.max(arguments, command.index() + 1);
+                }
+                if (command.segment() == SegmentType.S_LOCAL && command.index() >= locals) {
+                    return null;
+                }
+                if (command.type() == CommandType.C_POP && command.segment() == SegmentType.S_POINTER) {
+                    if (command.index() > 1) {
+                        return null;
+                    }
+                    if (!savedPointers.contains(command.index())) {
+                        savedPointers.add(command.index());
+                    }
+                }
+            }
+
+            // Return takes the only value left
+            if (depth != 1) {
+                return null;
+            }
+            return new Body(locals, arguments, savedPointers, commands.subList(0, size));
+        }
+
+        /**
+         * Appends the body in place of a call with nArgs arguments
+         */
+        private void expand(int nArgs, List<Command> out) {
+            String fileName = commands.isEmpty() ? null : commands.get(0).fileName();
+
+            for (int i = 0; i < locals; i++) {
+                out.add(Command.pushPop(CommandType.C_PUSH, SegmentType.S_CONSTANT, 0, fileName));
+            }
+            for (int pointer : savedPointers) {
+                out.add(Command.pushPop(CommandType.C_PUSH, SegmentType.S_POINTER, pointer, fileName));
+            }
+
+            // Values the body has pushed above the frame
+            int depth = 0;
+            int frame = nArgs + locals + savedPointers.size();
+
+            for (Command command : commands) {
+                // A pop addresses the stack as it is after the value is taken off
+                int above = command.type() == CommandType.C_POP ? depth - 1 : depth;
+
+                if (command.segment() == SegmentType.S_ARGUMENT) {
+                    out.add(stack(command, above + frame - command.index()));
+                } else if (command.segment() == SegmentType.S_LOCAL) {
+                    out.add(stack(command, above + savedPointers.size() + locals - command.index()));
+                } else {
+                    out.add(command);
+                }
+
+                depth += switch (command.type()) {
+                    case C_PUSH -> 1;
+                    case C_POP -> -1;
+                    default -> command.operation() == ArithmeticType.A_NEG || command.operation() == ArithmeticType.A_NOT ? 0 : -1;
+                };
+            }
+
+            // Saved pointers are restored from the top down, from below the returned value
+            for (int i = savedPointers.size() - 1; i >= 0; i--) {
+                out.add(Command.stack(CommandType.C_PUSH, 2 + savedPointers.size() - 1 - i, fileName));
+                out.add(Command.pushPop(CommandType.C_POP, SegmentType.S_POINTER, savedPointers.get(i), fileName));
+            }
+
+            // Returned value ends up where argument 0 was, as after a call
+            for (int i = 0; i < frame; i++) {
+                out.add(Command.stack(CommandType.C_POP, 1, fileName));
+            }
+        }
+
+        private static Command stack(Command command, int index) {
+            return Command.stack(command.type(), index, command.fileName());
+        }
+    }
+}
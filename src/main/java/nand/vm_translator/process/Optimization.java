@@ -0,0 +1,28 @@
+package nand.vm_translator.process;
+
+/**
+ * Optional ways of translating VM code, chosen with -O on the command line. None are on by default
+ */
+public enum Optimization {
+    SHARED_CALLS("shared-calls"), // Calls and returns jump to one shared routine each, instead of inlining it
+    SHARED_COMPARISONS("shared-comparisons"), // eq, gt and lt jump to one shared routine each
+    PEEPHOLE("peephole"), // Short command patterns are rewritten by Peephole before translation
+    CACHE_TOP("cache-top"), // Top of the stack is kept in D between commands, written to memory before jumps
+    DEAD_FUNCTIONS("dead-functions"), // Functions never called on the way from Sys.init are left out
+    INLINE("inline"); // Calls of small functions without calls or jumps are replaced by the function body
+
+    public final String label;
+
+    Optimization(String label) {
+        this.label = label;
+    }
+
+    public static Optimization valueOfLabel(String label) {
+        for (Optimization e : values()) {
+            if (e.label.equals(label)) {
+                return e;
+            }
+        }
+        return null;
+    }
+}
@@ -1,82 +1,169 @@
 package nand.vm_translator.process;
 
+import nand.io.LineReader;
+import nand.vm_translator.process.command.ArithmeticType;
+import nand.vm_translator.process.command.Bytecode;
+import nand.vm_translator.process.command.Command;
 import nand.vm_translator.process.command.CommandType;
+import nand.vm_translator.process.command.SegmentType;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 
-public class Parser {
+public final class Parser {
 
-    private RandomAccessFile vmFile;
+    private LineReader vmFile;
+    private ByteBuffer bytecode; // Rest of the current file if it is VM bytecode, null for text
+    private final List<String> bytecodeNames = new ArrayList<>(); // Names the bytecode of the current file defined
 
-    private String currentLine = ""; // Current line content
+    private CharSequence currentLine = ""; // Current line content, a view valid until the next line is read
     public int lineIndex = 0; // Current line number
 
-    private List<String> lineParts = new ArrayList<>();
+    private Command command; // Current command, parsed once when its line is read
+    private final Map<String, String> names = new HashMap<>(); // Interned label and function names
     public List<File> filesInPath = new ArrayList<>();
     public String currentFileName = "";
 
+    private boolean lineReady = false; // Next significant line is already read by hasMoreLines()
+    private boolean streamed = false; // Input has no file names, so they are taken from function names
+
     /**
-     * REGEX pattern that is used to retrieve parts of each line
-     * Possible result groups:
-     * 1 - Push/pop command
-     * 2 - push/pop
-     * 3 - Memory segment
-     * 4 - Command value
-     * 5 - Arithmetical/logical command
-     * 6 - function definition/call
-     * 7 - call/function
-     * 8 - functionName
-     * 9 - nVars
-     * 10 - label/goto/if-goto command
-     * 11 - label/goto/if-goto
-     * 12 - labelName
+     * Words of the current line found by the tokenizer, stored as [start, end) offsets in currentLine.
+     * A line has at most 3 words that matter: command, first and second argument
      */
-    private final Pattern patternCompiled = Pattern.compile("((push|pop) (local|argument|static|constant|this|that|temp|pointer) (\\S+))|(add|sub|neg|eq|gt|lt|and|or|not|return)|((call|function) (\\S+)\\s+(\\d+)?)|((if-goto|goto|label) (\\S+))");
+    private final int[] wordStarts = new int[3];
+    private final int[] wordEnds = new int[3];
+    private int wordCount;
 
 
-    public Parser(String textFileLocation) {
+    public Parser(String textFileLocation) throws IOException {
+        filesInPath.addAll(vmFiles(textFileLocation));
+        getNextFile();
+    }
+
+    /**
+     * Files a location stands for, in the order they are translated: the file itself, or all '.vm' and '.vmb' files
+     * of a directory with Sys first. Of a class that is in both, only the newer file is taken
+     */
+    public static List<File> vmFiles(String textFileLocation) {
+        List<File> files = new ArrayList<>();
         File file = new File(textFileLocation);
-        if (file.isDirectory() && file.listFiles() != null) {
-            // If directory passed, parse all '.vm' files from it. Sys.vm should be first
-            Optional<File> sysFile = Arrays.stream(Objects.requireNonNull(file.listFiles())).filter(file1 -> file1.getName().equals("Sys.vm")).findFirst();
-            sysFile.ifPresent(value -> filesInPath.add(value));
 
+        if (file.isDirectory() && file.listFiles() != null) {
+            // If directory passed, parse all '.vm' and '.vmb' files from it. Sys should be first
             for (File child: Objects.requireNonNull(file.listFiles())) {
-                if (child.getName().endsWith(".vm") && !child.getName().equals("Sys.vm")) {
-                    filesInPath.add(child);
+                String name = child.getName();
+                if (!name.endsWith(".vm") && !name.endsWith(Bytecode.EXTENSION)) {
+                    continue;
+                }
+
+                // Bytecode wins a tie, as it is what the compiler was last asked for
+                boolean isBytecode = name.endsWith(Bytecode.EXTENSION);
+                File other = new File(file, className(child) + (isBytecode ? ".vm" : Bytecode.EXTENSION));
+                if (other.exists() && (other.lastModified() > child.lastModified() || other.lastModified() == child.lastModified() && !isBytecode)) {
+                    continue;
+                }
+
+                if (className(child).equals("Sys")) {
+                    files.add(0, child);
+                } else {
+                    files.add(child);
                 }
             }
         } else {
-            filesInPath.add(file);
+            files.add(file);
         }
+        return files;
+    }
 
-        getNextFile();
+    /**
+     * Name of a .vm or .vmb file without the extension, which is the name of the class compiled to it
+     */
+    public static String className(File file) {
+        String name = file.getName();
+        if (name.endsWith(Bytecode.EXTENSION)) {
+            return name.substring(0, name.length() - Bytecode.EXTENSION.length());
+        }
+        return name.endsWith(".vm") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    /**
+     * Parses VM commands of a stream. As there are no files, static variables are named after the class of
+     * the enclosing function, which is the name of the file it would be compiled to from Jack
+     *
+     * @throws IOException Failed reading from stream results in an exception
+     */
+    public Parser(InputStream source) throws IOException {
+        // Bytecode is told apart from text by its first bytes, which are put back for the text reader
+        PushbackInputStream input = new PushbackInputStream(source, Bytecode.MAGIC.length);
+        byte[] start = input.readNBytes(Bytecode.MAGIC.length);
+        input.unread(start);
+
+        if (Arrays.equals(start, Bytecode.MAGIC)) {
+            startBytecode(ByteBuffer.wrap(input.readAllBytes()));
+        } else {
+            vmFile = LineReader.of(input);
+        }
+        currentFileName = "Stdin.vm";
+        streamed = true;
+
+        // Read ahead, so currentFileName is known before the first command (it is Sys.vm if Sys.init comes first)
+        hasMoreLines();
     }
 
     /**
-     * Checks whether there are lines in the file left. Otherwise, go to the next file in folder if any.
+     * Parses VM bytecode from the remaining bytes of the buffer, like a stream. Buffer position is not changed
+     *
+     * @throws IOException Buffer does not hold VM bytecode
+     */
+    public Parser(ByteBuffer source) throws IOException {
+        startBytecode(source.duplicate());
+        currentFileName = "Stdin.vm";
+        streamed = true;
+
+        hasMoreLines();
+    }
+
+    /**
+     * Checks whether there are commands in the file left. Otherwise, go to the next file in folder if any.
+     * Insignificant lines are skipped on the way
      *
      * @throws IOException Failed reading from file results in an exception
      */
     public boolean hasMoreLines() throws IOException {
-        if (vmFile.getFilePointer() < vmFile.length()) {
-            return true;
-        } else {
-            if (! filesInPath.isEmpty()) {
+        while (!lineReady) {
+            if (bytecode != null ? !bytecode.hasRemaining() : !vmFile.nextLine()) {
+                if (filesInPath.isEmpty()) {
+                    return false;
+                }
                 getNextFile();
-                return true;
-            } else {
-                return false;
+                continue;
+            }
+
+            // Every command of bytecode is significant
+            if (bytecode != null) {
+                command = readCommand();
+                lineReady = true;
+                continue;
             }
+
+            currentLine = vmFile.line();
+
+            // Lines without a command are skipped
+            command = tokenize() ? parseCommand() : null;
+            lineReady = command != null;
         }
+
+        return true;
     }
 
     /**
@@ -85,35 +172,27 @@ public class Parser {
      * @throws IOException Failed next line reading results in an exception
      */
     public void advance() throws IOException {
-        currentLine = vmFile.readLine().trim();
-
-        lineParts = patternCompiled
-            .matcher(currentLine)
-            .results()
-            .flatMap(mr -> IntStream.rangeClosed(1, mr.groupCount())
-                    .mapToObj(mr::group))
-            .collect(Collectors.toList());
-
-        // Go to next line if current is insignificant
-        if (Objects.equals(currentLine, "") || lineParts.isEmpty() || currentLine.startsWith("//")) {
-            advance();
-            return;
+        if (!hasMoreLines()) {
+            throw new IOException("Tried to advance past the end of file");
         }
 
+        lineReady = false;
         lineIndex += 1;
     }
 
 
+    /**
+     * Returns the current command
+     */
+    public Command command() {
+        return command;
+    }
+
     /**
      * Indicates current command type
      */
     public CommandType commandType() {
-        if (lineParts.get(1) != null) return CommandType.valueOfLabel(lineParts.get(1));
-        if (lineParts.get(4) != null && lineParts.get(4).equals("return")) return CommandType.C_RETURN;
-        if (lineParts.get(4) != null) return CommandType.C_ARITHMETIC;
-        if (lineParts.get(5) != null) return CommandType.valueOfLabel(lineParts.get(6));
-        if (lineParts.get(9) != null) return CommandType.valueOfLabel(lineParts.get(10));
-        throw new UnsupportedOperationException(String.format("This command is not implemented %s", currentLine));
+        return command.type();
     }
 
 
@@ -121,32 +200,319 @@ public class Parser {
      * Returns the first argument of the current command
      */
     public String arg1() {
-        if (commandType() == CommandType.C_PUSH || commandType() == CommandType.C_POP) return lineParts.get(2);
-        if (commandType() == CommandType.C_ARITHMETIC) return lineParts.get(4);
-        if (commandType() == CommandType.C_FUNCTION || commandType() == CommandType.C_CALL) return lineParts.get(7);
-        if (commandType() == CommandType.C_IF || commandType() == CommandType.C_LABEL || commandType() == CommandType.C_GOTO) return lineParts.get(11);
-        throw new IllegalCallerException(String.format("Cannot get first argument of command %s", currentLine));
+        return switch (command.type()) {
+            case C_PUSH, C_POP -> command.segment().label;
+            case C_ARITHMETIC -> command.operation().label;
+            case C_FUNCTION, C_CALL, C_IF, C_LABEL, C_GOTO -> command.name();
+            default -> throw new IllegalCallerException(String.format("Cannot get first argument of command %s", command));
+        };
     }
 
     /**
      * Returns the second argument of the current command
      */
     public int arg2() {
-        if (commandType() == CommandType.C_FUNCTION || commandType() == CommandType.C_CALL) return lineParts.get(8) != null ? Integer.parseInt(lineParts.get(8)) : 0;
-        if (commandType() == CommandType.C_PUSH || commandType() == CommandType.C_POP) return Integer.parseInt(lineParts.get(3));
-        throw new IllegalCallerException(String.format("Cannot get second argument of command %s", currentLine));
+        return switch (command.type()) {
+            case C_FUNCTION, C_CALL, C_PUSH, C_POP -> command.index();
+            default -> throw new IllegalCallerException(String.format("Cannot get second argument of command %s", command));
+        };
+    }
+
+    /**
+     * Splits the current line into words at whitespace, up to a comment
+     *
+     * @return false if the line has no words
+     */
+    private boolean tokenize() {
+        int end = currentLine.length();
+        wordCount = 0;
+
+        for (int i = 0; i < end && wordCount < wordStarts.length; ) {
+            char c = currentLine.charAt(i);
+
+            if (c <= ' ') {
+                i++;
+            } else if (c == '/' && i + 1 < end && currentLine.charAt(i + 1) == '/') {
+                break;
+            } else {
+                int start = i;
+                while (i < end && (c = currentLine.charAt(i)) > ' ' && !(c == '/' && i + 1 < end && currentLine.charAt(i + 1) == '/')) {
+                    i++;
+                }
+                wordStarts[wordCount] = start;
+                wordEnds[wordCount] = i;
+                wordCount++;
+            }
+        }
+
+        return wordCount > 0;
+    }
+
+    /**
+     * Builds the command out of the words of the current line. The first word is recognized by its length and
+     * first character, then checked in full.
+     * Streamed input takes the file name from the class of a function here, before the function command is built
+     *
+     * @return Command or null if the line is not a known command, which is skipped like before
+     */
+    private Command parseCommand() {
+        int start = wordStarts[0];
+        int length = wordEnds[0] - start;
+        char first = currentLine.charAt(start);
+
+        ArithmeticType operation = null;
+        CommandType type = null;
+
+        switch (length) {
+            case 2 -> operation = switch (first) {
+                case 'e' -> ArithmeticType.A_EQ;
+                case 'g' -> ArithmeticType.A_GT;
+                case 'l' -> ArithmeticType.A_LT;
+                case 'o' -> ArithmeticType.A_OR;
+                default -> null;
+            };
+            case 3 -> {
+                char second = currentLine.charAt(start + 1);
+                switch (first) {
+                    case 'a' -> operation = second == 'n' ? ArithmeticType.A_AND : ArithmeticType.A_ADD;
+                    case 's' -> operation = ArithmeticType.A_SUB;
+                    case 'n' -> operation = second == 'e' ? ArithmeticType.A_NEG : ArithmeticType.A_NOT;
+                    case 'p' -> type = CommandType.C_POP;
+                    default -> {}
+                }
+            }
+            case 4 -> type = switch (first) {
+                case 'p' -> CommandType.C_PUSH;
+                case 'g' -> CommandType.C_GOTO;
+                case 'c' -> CommandType.C_CALL;
+                default -> null;
+            };
+            case 5 -> type = first == 'l' ? CommandType.C_LABEL : null;
+            case 6 -> type = first == 'r' ? CommandType.C_RETURN : null;
+            case 7 -> type = first == 'i' ? CommandType.C_IF : null;
+            case 8 -> type = first == 'f' ? CommandType.C_FUNCTION : null;
+            default -> {}
+        }
+
+        if (operation != null) {
+            return wordEquals(0, operation.label) ? Command.arithmetic(operation, currentFileName) : null;
+        }
+        if (type == null || !wordEquals(0, type.label)) {
+            return null;
+        }
+
+        return switch (type) {
+            case C_PUSH, C_POP -> {
+                SegmentType segment = wordCount >= 3 ? segment(1) : null;
+                yield segment == null ? null : Command.pushPop(type, segment, number(2), currentFileName);
+            }
+            case C_RETURN -> Command.named(type, null, currentFileName);
+            case C_FUNCTION, C_CALL -> {
+                if (wordCount < 2) {
+                    yield null;
+                }
+                String functionName = word(1);
+
+                if (streamed && type == CommandType.C_FUNCTION) {
+                    currentFileName = functionName.substring(0, Math.max(functionName.indexOf('.'), 0)) + ".vm";
+                }
+                yield Command.function(type, functionName, wordCount >= 3 ? number(2) : 0, currentFileName);
+            }
+            default -> wordCount < 2 ? null : Command.named(type, word(1), currentFileName);
+        };
+    }
+
+    /**
+     * Builds the next command out of bytecode. Streamed input takes the file name from the class of a function here,
+     * as for text
+     *
+     * @throws IOException Bytes are not a command
+     */
+    private Command readCommand() throws IOException {
+        int opcode = bytecode.get() & 0xFF;
+        CommandType type = Bytecode.commandType(opcode);
+        if (type == null) {
+            throw new IOException(String.format("Unknown opcode %s in VM bytecode", opcode));
+        }
+
+        return switch (type) {
+            case C_ARITHMETIC -> {
+                ArithmeticType operation = Bytecode.operation(opcode);
+                if (operation == null) {
+                    throw new IOException(String.format("Unknown opcode %s in VM bytecode", opcode));
+                }
+                yield Command.arithmetic(operation, currentFileName);
+            }
+            case C_PUSH, C_POP -> {
+                int segment = bytecode.hasRemaining() ? bytecode.get() & 0xFF : -1;
+
+                if (segment < 0 || segment >= SegmentType.values().length) {
+                    throw new IOException(String.format("Unknown segment %s in VM bytecode", segment));
+                }
+                yield Command.pushPop(type, SegmentType.values()[segment], Bytecode.readVarint(bytecode), currentFileName);
+            }
+            case C_RETURN -> Command.named(type, null, currentFileName);
+            case C_FUNCTION, C_CALL -> {
+                String functionName = readName();
+
+                if (streamed && type == CommandType.C_FUNCTION) {
+                    currentFileName = functionName.substring(0, Math.max(functionName.indexOf('.'), 0)) + ".vm";
+                }
+                yield Command.function(type, functionName, Bytecode.readVarint(bytecode), currentFileName);
+            }
+            default -> Command.named(type, readName(), currentFileName);
+        };
+    }
+
+    /**
+     * Reads a name of bytecode, either new or one of the names read before
+     */
+    private String readName() throws IOException {
+        int id = Bytecode.readVarint(bytecode);
+
+        if (id == 0) {
+            int length = Bytecode.readVarint(bytecode);
+            if (length < 0 || length > bytecode.remaining()) {
+                throw new IOException("VM bytecode ends in the middle of a command");
+            }
+
+            byte[] bytes = new byte[length];
+            bytecode.get(bytes);
+            String name = intern(new String(bytes, StandardCharsets.UTF_8));
+            bytecodeNames.add(name);
+            return name;
+        }
+
+        if (id < 0 || id > bytecodeNames.size()) {
+            throw new IOException(String.format("Unknown name %s in VM bytecode", id));
+        }
+        return bytecodeNames.get(id - 1);
+    }
+
+    /**
+     * Makes the buffer the source of commands, after checking its first bytes
+     *
+     * @throws IOException Buffer does not start as VM bytecode
+     */
+    private void startBytecode(ByteBuffer source) throws IOException {
+        for (byte b : Bytecode.MAGIC) {
+            if (!source.hasRemaining() || source.get() != b) {
+                throw new IOException("Input is not VM bytecode");
+            }
+        }
+
+        bytecode = source;
+        bytecodeNames.clear();
+    }
+
+    /**
+     * Recognizes segment of the word by its first character, checking the whole word after
+     */
+    private SegmentType segment(int word) {
+        int start = wordStarts[word];
+
+        SegmentType segment = switch (currentLine.charAt(start)) {
+            case 'l' -> SegmentType.S_LOCAL;
+            case 'a' -> SegmentType.S_ARGUMENT;
+            case 's' -> SegmentType.S_STATIC;
+            case 'c' -> SegmentType.S_CONSTANT;
+            case 'p' -> SegmentType.S_POINTER;
+            case 't' -> {
+                if (wordEnds[word] - start < 2) {
+                    yield null;
+                }
+                yield switch (currentLine.charAt(start + 1)) {
+                    case 'e' -> SegmentType.S_TEMP;
+                    case 'h' -> wordEnds[word] - start > 2 && currentLine.charAt(start + 2) == 'i' ? SegmentType.S_THIS : SegmentType.S_THAT;
+                    default -> null;
+                };
+            }
+            default -> null;
+        };
+
+        return segment != null && wordEquals(word, segment.label) ? segment : null;
+    }
+
+    /**
+     * Parses the word as a decimal integer, with an optional minus sign
+     *
+     * @throws NumberFormatException Word is not a number or is out of int range
+     */
+    private int number(int word) {
+        int start = wordStarts[word];
+        int end = wordEnds[word];
+        boolean negative = currentLine.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+
+        if (i == end) {
+            throw new NumberFormatException(String.format("Expected a number in line %s", currentLine));
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            char c = currentLine.charAt(i);
+            if (c < '0' || c > '9' || value > Integer.MAX_VALUE) {
+                throw new NumberFormatException(String.format("Expected a number in line %s", currentLine));
+            }
+            value = value * 10 + (c - '0');
+        }
+
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            throw new NumberFormatException(String.format("Expected a number in line %s", currentLine));
+        }
+        return (int) value;
+    }
+
+    private boolean wordEquals(int word, String text) {
+        int start = wordStarts[word];
+        if (wordEnds[word] - start != text.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            if (currentLine.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the word as an interned String
+     */
+    private String word(int word) {
+        return intern(currentLine.subSequence(wordStarts[word], wordEnds[word]).toString());
+    }
+
+    private String intern(String name) {
+        String interned = names.putIfAbsent(name, name);
+        return interned != null ? interned : name;
     }
 
     /**
      * Gets next file from filesInPath. Will continue reading from it
+     *
+     * @throws IOException Failed opening the file results in an exception
      */
-    private void getNextFile() {
-        try {
-            vmFile = new RandomAccessFile(filesInPath.get(0), "r");
-            currentFileName = filesInPath.get(0).getName();
-            filesInPath.remove(0);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+    private void getNextFile() throws IOException {
+        File file = filesInPath.remove(0);
+
+        if (file.getName().endsWith(Bytecode.EXTENSION)) {
+            if (!file.isFile()) {
+                throw new FileNotFoundException(file.getPath());
+            }
+
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                // Mapping stays valid after the channel is closed
+                startBytecode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+            // Static variables are named as they are when the class is compiled to text
+            currentFileName = className(file) + ".vm";
+        } else {
+            vmFile = LineReader.open(file.getPath());
+            bytecode = null;
+            currentFileName = file.getName();
         }
     }
 }
@@ -0,0 +1,181 @@
+package nand.vm_translator.process;
+
+import nand.vm_translator.process.command.ArithmeticType;
+import nand.vm_translator.process.command.Command;
+import nand.vm_translator.process.command.CommandType;
+import nand.vm_translator.process.command.SegmentType;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pass of PEEPHOLE between Parser and Code. Keeps the last few commands back, rewriting short patterns:
+ *  - arithmetic on constants is done here, leaving one push constant
+ *  - push followed by pop becomes a move without the stack, or nothing if both name the same location
+ *  - eq, gt or lt followed by not and if-goto becomes a jump on the inverted comparison
+ *  - not followed by if-goto of any other value becomes a jump unless the value is -1
+ *  - if-goto of a constant becomes goto or nothing
+ * Patterns never reach over labels, calls, functions and returns, where code can be entered from elsewhere
+ */
+public class Peephole {
+
+    // Commands kept back at most, enough for constant expressions a few levels deep
+    private static final int WINDOW = 4;
+
+    private final Code code;
+    private final ArrayDeque<Command> pending = new ArrayDeque<>();
+
+    public Peephole(Code code) {
+        this.code = code;
+    }
+
+    /**
+     * Takes the next command. Its code, or code of commands before it, may be written later
+     */
+    public void write(Command command) {
+        switch (command.type()) {
+            case C_PUSH -> pending.addLast(command);
+            case C_ARITHMETIC -> {
+                if (!fold(command)) {
+                    pending.addLast(command);
+                }
+            }
+            case C_POP -> writePop(command);
+            case C_IF -> writeIfGoTo(command);
+            default -> {
+                flush();
+                code.write(command);
+            }
+        }
+
+        while (pending.size() > WINDOW) {
+            code.write(pending.removeFirst());
+        }
+    }
+
+    /**
+     * Writes the code of commands that were kept back
+     */
+    public void flush() {
+        while (!pending.isEmpty()) {
+            code.write(pending.removeFirst());
+        }
+    }
+
+    /**
+     * Replaces constants on top of the stack and the operation on them with its result
+     *
+     * @return Whether the operation was folded into constants that were pending
+     */
+    private boolean fold(Command operation) {
+        ArithmeticType type = operation.operation();
+        if (type == null) {
+            return false;
+        }
+
+        boolean unary = type == ArithmeticType.A_NEG || type == ArithmeticType.A_NOT;
+        if (unary) {
+            Command x = pending.peekLast();
+            if (!isConstant(x)) {
+                return false;
+            }
+
+            pending.removeLast();
+            int result = type == ArithmeticType.A_NEG ? -x.index() : ~x.index();
+            pending.addLast(constant((short) result, x.fileName()));
+            return true;
+        }
+
+        Command y = pending.pollLast();
+        Command x = pending.peekLast();
+        if (!isConstant(x) || !isConstant(y)) {
+            if (y != null) {
+                pending.addLast(y);
+            }
+            return false;
+        }
+
+        pending.removeLast();
+        // Comparisons subtract as the Hack code does, so they overflow the same way
+        short difference = (short) (x.index() - y.index());
+        int result = switch (type) {
+            case A_ADD -> x.index() + y.index();
+            case A_SUB -> difference;
+            case A_AND -> x.index() & y.index();
+            case A_OR -> x.index() | y.index();
+            case A_EQ -> difference == 0 ? -1 : 0;
+            case A_GT -> difference > 0 ? -1 : 0;
+            case A_LT -> difference < 0 ? -1 : 0;
+            default -> throw new IllegalStateException("Unexpected value: " + type);
+        };
+        pending.addLast(constant((short) result, x.fileName()));
+        return true;
+    }
+
+    private void writePop(Command pop) {
+        Command push = pending.peekLast();
+
+        // Pop to constant pushes, as Code does, so it is not a move
+        if (push == null || push.type() != CommandType.C_PUSH || pop.segment() == SegmentType.S_CONSTANT) {
+            flush();
+            code.write(pop);
+            return;
+        }
+
+        pending.removeLast();
+        if (sameLocation(push, pop)) {
+            return;
+        }
+
+        flush();
+        code.writeMove(push, pop);
+    }
+
+    private void writeIfGoTo(Command ifGoTo) {
+        Command condition = pending.pollLast();
+
+        if (isConstant(condition)) {
+            flush();
+            if (condition.index() != 0) {
+                code.writeGoTo(ifGoTo.name());
+            }
+        } else if (condition != null && condition.operation() == ArithmeticType.A_NOT) {
+            // Only a comparison is known to leave a boolean, other values are inverted bit by bit
+            Command comparison = pending.peekLast();
+            if (isComparison(comparison)) {
+                pending.removeLast();
+                flush();
+                code.writeIfNotComparisonGoTo(comparison.operation(), ifGoTo.name());
+            } else {
+                flush();
+                code.writeIfNotGoTo(ifGoTo.name());
+            }
+        } else {
+            if (condition != null) {
+                pending.addLast(condition);
+            }
+            flush();
+            code.write(ifGoTo);
+        }
+    }
+
+    private static boolean sameLocation(Command push, Command pop) {
+        return push.segment() == pop.segment()
+                && push.stack() == pop.stack()
+                && push.index() == pop.index()
+                && (push.segment() != SegmentType.S_STATIC || push.fileName().equals(pop.fileName()));
+    }
+
+    private static boolean isComparison(Command command) {
+        return command != null && (command.operation() == ArithmeticType.A_EQ
+                || command.operation() == ArithmeticType.A_GT || command.operation() == ArithmeticType.A_LT);
+    }
+
+    private static boolean isConstant(Command command) {
+        return command != null && command.type() == CommandType.C_PUSH && command.segment() == SegmentType.S_CONSTANT
+                && command.index() >= Short.MIN_VALUE && command.index() <= Short.MAX_VALUE;
+    }
+
+    private static Command constant(int value, String fileName) {
+        return Command.pushPop(CommandType.C_PUSH, SegmentType.S_CONSTANT, value, fileName);
+    }
+}
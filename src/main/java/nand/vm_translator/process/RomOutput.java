@@ -0,0 +1,61 @@
+package nand.vm_translator.process;
+
+import nand.assembler.RomBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Machine code of the instructions, encoded into a ROM as they come, so no assembly text is written or read again.
+ * Encoding is the same as assembling the text TextOutput would make
+ */
+public class RomOutput implements CodeOutput {
+
+    // Templates encoded so far. Templates are constants of Code, so they are shared by all outputs
+    private static final Map<String, RomBuilder.Fragment> fragments = new ConcurrentHashMap<>();
+
+    private final RomBuilder rom;
+    private final StringBuilder comment = new StringBuilder(); // Comments are written here and dropped
+
+    public RomOutput(RomBuilder rom) {
+        this.rom = rom;
+    }
+
+    @Override
+    public void lines(String template) {
+        try {
+            rom.add(fragments.computeIfAbsent(template, RomBuilder::fragment));
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void at(int address) {
+        try {
+            rom.addAddress(address);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void at(CharSequence symbol) {
+        try {
+            rom.addSymbol(symbol);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void label(CharSequence label) {
+        rom.addLabel(label);
+    }
+
+    @Override
+    public StringBuilder comment() {
+        comment.setLength(0);
+        return comment;
+    }
+}
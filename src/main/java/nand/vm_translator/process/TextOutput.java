@@ -0,0 +1,37 @@
+package nand.vm_translator.process;
+
+/**
+ * Assembly text of the instructions, appended to a buffer
+ */
+public class TextOutput implements CodeOutput {
+    public final StringBuilder text;
+
+    public TextOutput(StringBuilder text) {
+        this.text = text;
+    }
+
+    @Override
+    public void lines(String template) {
+        text.append(template);
+    }
+
+    @Override
+    public void at(int address) {
+        text.append('@').append(address).append('\n');
+    }
+
+    @Override
+    public void at(CharSequence symbol) {
+        text.append('@').append(symbol).append('\n');
+    }
+
+    @Override
+    public void label(CharSequence label) {
+        text.append('(').append(label).append(")\n");
+    }
+
+    @Override
+    public StringBuilder comment() {
+        return text;
+    }
+}
@@ -0,0 +1,73 @@
+package nand.vm_translator.process.command;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary encoding of VM commands, kept in .vmb files. Read without tokenizing or parsing numbers:
+ * <pre>
+ * file    = 'V' 'M' 'B' 0x01 command*
+ * command = opcode [segment] [name] [index]
+ * opcode  = ordinal of CommandType &lt;&lt; 4 | ordinal of ArithmeticType for C_ARITHMETIC
+ * segment = ordinal of SegmentType, of C_PUSH and C_POP
+ * name    = of C_LABEL, C_GOTO, C_IF, C_FUNCTION and C_CALL. Varint 0 followed by varint length and UTF-8 bytes
+ *           of a name that is new in the file, or varint k for the k-th new name of the file, counted from 1
+ * index   = varint, of C_PUSH, C_POP, C_FUNCTION and C_CALL
+ * varint  = int as unsigned, 7 bits per byte from the lowest. High bit is set in every byte but the last
+ * </pre>
+ */
+public class Bytecode {
+    public static final String EXTENSION = ".vmb";
+    public static final byte[] MAGIC = {'V', 'M', 'B', 1};
+
+    public static int opcode(CommandType type, ArithmeticType operation) {
+        return type.ordinal() << 4 | (operation != null ? operation.ordinal() : 0);
+    }
+
+    /**
+     * Command type of the opcode, or null if it is not one
+     */
+    public static CommandType commandType(int opcode) {
+        int type = opcode >>> 4;
+        return type < CommandType.values().length ? CommandType.values()[type] : null;
+    }
+
+    /**
+     * Operation of a C_ARITHMETIC opcode, or null if it is not one
+     */
+    public static ArithmeticType operation(int opcode) {
+        int operation = opcode & 0xF;
+        return operation < ArithmeticType.values().length ? ArithmeticType.values()[operation] : null;
+    }
+
+    public static void writeVarint(OutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    /**
+     * Reads a varint from the buffer, moving its position past it
+     *
+     * @throws IOException Varint is longer than an int or the buffer ends in it
+     */
+    public static int readVarint(ByteBuffer input) throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!input.hasRemaining()) {
+                throw new IOException("VM bytecode ends in the middle of a command");
+            }
+            int b = input.get();
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Too long varint in VM bytecode");
+    }
+}
@@ -0,0 +1,65 @@
+package nand.vm_translator.process.command;
+
+/**
+ * One parsed VM command. Fields a command type does not use are null (or 0 for index)
+ *
+ * @param type Kind of command
+ * @param operation Operation of C_ARITHMETIC
+ * @param segment Memory segment of C_PUSH and C_POP, null for the stack
+ * @param index Index in segment for C_PUSH and C_POP, nArgs of C_CALL, nVars of C_FUNCTION
+ * @param name Label of C_LABEL, C_GOTO and C_IF, function name of C_FUNCTION and C_CALL. Interned by the parser,
+ *             so equal names of one parse are the same String
+ * @param fileName Name of the .vm file the command comes from, which names its static variables
+ * @param stack C_PUSH or C_POP of a value on the stack itself, which only Inliner makes. It is not in the VM language,
+ *              so it can not be parsed from text or bytecode
+ */
+public record Command(CommandType type, ArithmeticType operation, SegmentType segment, int index, String name, String fileName,
+                      boolean stack) {
+
+    public static Command arithmetic(ArithmeticType operation, String fileName) {
+        return new Command(CommandType.C_ARITHMETIC, operation, null, 0, null, fileName, false);
+    }
+
+    public static Command pushPop(CommandType type, SegmentType segment, int index, String fileName) {
+        return new Command(type, null, segment, index, null, fileName, false);
+    }
+
+    /**
+     * C_PUSH or C_POP of the value at the index counted from the top of the stack, 1 being the top
+     */
+    public static Command stack(CommandType type, int index, String fileName) {
+        return new Command(type, null, null, index, null, fileName, true);
+    }
+
+    /**
+     * Command with a name only: C_LABEL, C_GOTO, C_IF. Also C_RETURN, which has a null name
+     */
+    public static Command named(CommandType type, String name, String fileName) {
+        return new Command(type, null, null, 0, name, fileName, false);
+    }
+
+    /**
+     * C_FUNCTION with its nVars or C_CALL with its nArgs
+     */
+    public static Command function(CommandType type, String name, int count, String fileName) {
+        return new Command(type, null, null, count, name, fileName, false);
+    }
+
+    /**
+     * Label of the segment of C_PUSH and C_POP, "stack" for the stack
+     */
+    public String segmentLabel() {
+        return stack ? "stack" : segment.label;
+    }
+
+    @Override
+    public String toString() {
+        return switch (type) {
+            case C_ARITHMETIC -> operation.label;
+            case C_PUSH, C_POP -> String.format("%s %s %s", type.label, segmentLabel(), index);
+            case C_LABEL, C_GOTO, C_IF -> String.format("%s %s", type.label, name);
+            case C_FUNCTION, C_CALL -> String.format("%s %s %s", type.label, name, index);
+            case C_RETURN -> type.label;
+        };
+    }
+}
@@ -0,0 +1,401 @@
+package nand.workload;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Generates large valid programs for benchmarks and scale tests.
+ * Output only depends on the seed and the sizes asked for, so every run sees the same program
+ */
+public class WorkloadGenerator {
+
+    public static final int MAX_VARIABLES = 16384 - 16; // Variables stay below SCREEN
+
+    private static final String[] DESTS = {"D", "M", "A", "MD", "AM", "AD", "AMD"};
+    private static final String[] COMPS = {"0", "1", "-1", "D", "A", "M", "!D", "!M", "-D", "-A", "D+1", "M+1",
+            "D-1", "A-1", "M-1", "D+A", "D+M", "D-A", "M-D", "D&M", "D|A", "D|M"};
+    private static final String[] JUMPS = {"JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP"};
+    private static final String[] BUILT_IN_SYMBOLS = {"SP", "LCL", "ARG", "THIS", "THAT", "R13", "R14", "R15", "SCREEN", "KBD"};
+
+    private static final String[] BINARY_OPERATIONS = {"add", "sub", "and", "or", "eq", "gt", "lt"};
+    private static final String[] UNARY_OPERATIONS = {"neg", "not"};
+    private static final char[] JACK_OPERATORS = {'+', '-', '*', '/'};
+
+    private final long seed;
+
+    public WorkloadGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Hack assembly split into labeled blocks with jumps back and forth, variables and built-in symbols.
+     * Labels past the end of the addressable ROM are defined but never referenced
+     *
+     * @param instructions Number of instructions, excluding the final loop of two
+     * @param variables Number of distinct variables, at most MAX_VARIABLES
+     */
+    public String assembly(int instructions, int variables) {
+        if (variables < 1 || variables > MAX_VARIABLES) {
+            throw new IllegalArgumentException(String.format("Variable count must be from 1 to %s", MAX_VARIABLES));
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder asm = new StringBuilder(instructions * 12);
+        asm.append("// Generated with seed ").append(seed).append('\n');
+
+        int address = 0;
+        int block = 0;
+        int addressableBlocks = 0; // Blocks starting at an address an A instruction can hold, so they can be jumped to
+
+        while (address < instructions) {
+            if (address <= 32767) {
+                addressableBlocks = block + 1;
+            }
+            int blockLength = Math.min(instructions - address, random.nextInt(4, 25));
+            int blockEnd = address + blockLength;
+
+            if (random.nextInt(8) == 0) {
+                asm.append('\n');
+            }
+            asm.append("(BLOCK_").append(block).append(")\n");
+
+            while (address < blockEnd) {
+                // Instructions come one or two at a time, pairs only where the block has room for both
+                address += switch (random.nextInt(blockEnd - address >= 2 ? 6 : 1)) {
+                    case 0 -> {
+                        asm.append("    ").append(randomCInstruction(random)).append('\n');
+                        yield 1;
+                    }
+                    case 1 -> {
+                        asm.append("    @").append(random.nextInt(32768)).append('\n')
+                                .append("    D=A\n");
+                        yield 2;
+                    }
+                    case 2 -> {
+                        asm.append("    @v_").append(random.nextInt(variables)).append('\n')
+                                .append("    M=D+M // update variable\n");
+                        yield 2;
+                    }
+                    case 3 -> {
+                        asm.append("    @").append(BUILT_IN_SYMBOLS[random.nextInt(BUILT_IN_SYMBOLS.length)]).append('\n')
+                                .append("    D=M\n");
+                        yield 2;
+                    }
+                    default -> {
+                        // Jump back to any earlier block or forward to the next one, if its address fits an A instruction
+                        int target = random.nextBoolean() || blockEnd > 32767 ? random.nextInt(addressableBlocks) : block + 1;
+                        asm.append("    @BLOCK_").append(target).append('\n')
+                                .append("    D;").append(JUMPS[random.nextInt(JUMPS.length)]).append('\n');
+                        yield 2;
+                    }
+                };
+            }
+            block += 1;
+        }
+
+        // Always define the label the last block may jump forward to. Ends in a loop, back to the start if too far
+        asm.append("(BLOCK_").append(block).append(")\n")
+                .append("(END)\n")
+                .append(address <= 32767 ? "    @END\n" : "    @BLOCK_0\n")
+                .append("    0;JMP\n");
+
+        return asm.toString();
+    }
+
+    /**
+     * VM program of a Sys class and generated classes in layers, where functions of a layer call functions of the next.
+     * The call graph has no cycles, so the program ends, and it is as deep as there are layers.
+     * Note that about a hundred functions already translate to more instructions than Hack can address
+     *
+     * @param classes Number of generated classes, besides Sys and Main
+     * @param functionsPerClass Number of functions in each generated class
+     * @param depth Number of layers, at most the number of classes
+     * @return Source of each file keyed by file name, like "Sys.vm"
+     */
+    public Map<String, String> vmProgram(int classes, int functionsPerClass, int depth) {
+        checkLayers(classes, functionsPerClass, depth);
+        SplittableRandom random = new SplittableRandom(seed);
+        Map<String, String> files = new LinkedHashMap<>();
+
+        files.put("Sys.vm", """
+                function Sys.init 0
+                call Main.main 0
+                pop temp 0
+                label Sys.init$HALT
+                goto Sys.init$HALT
+                """);
+
+        // Main calls every function of the first layer
+        StringBuilder main = new StringBuilder("function Main.main 0\n");
+        for (int c = 0; c < classesInLayer(classes, depth, 0); c++) {
+            for (int f = 0; f < functionsPerClass; f++) {
+                main.append("push constant ").append(random.nextInt(100)).append('\n')
+                        .append("call ").append(className(c)).append(".f").append(f).append(" 1\n")
+                        .append("pop temp 0\n");
+            }
+        }
+        files.put("Main.vm", main.append("push constant 0\nreturn\n").toString());
+
+        for (int c = 0; c < classes; c++) {
+            StringBuilder vm = new StringBuilder();
+            int layer = layerOf(c, classes, depth);
+
+            for (int f = 0; f < functionsPerClass; f++) {
+                String functionName = className(c) + ".f" + f;
+                int locals = random.nextInt(1, 4);
+                vm.append("function ").append(functionName).append(' ').append(locals).append('\n');
+
+                for (int i = 0; i < locals; i++) {
+                    vm.append("push constant ").append(random.nextInt(100)).append('\n')
+                            .append("pop local ").append(i).append('\n');
+                }
+
+                int statements = random.nextInt(4, 12);
+                for (int s = 0; s < statements; s++) {
+                    vmStatement(vm, random, functionName + "$" + s, locals, 0);
+                }
+
+                // Call into the next layer, with one argument like every generated function takes
+                if (layer + 1 < depth) {
+                    int callee = randomClassInLayer(random, classes, depth, layer + 1);
+                    vm.append("push argument 0\n")
+                            .append("call ").append(className(callee)).append(".f").append(random.nextInt(functionsPerClass)).append(" 1\n")
+                            .append("pop temp 0\n");
+                }
+
+                vm.append("push local 0\n").append("return\n");
+            }
+
+            files.put(className(c) + ".vm", vm.toString());
+        }
+
+        return files;
+    }
+
+    /**
+     * Jack program of generated classes in layers, same as vmProgram. Only uses what JackCompiler supports:
+     * functions with one parameter, do statements calling with one integer expression, and return
+     *
+     * @param classes Number of generated classes, besides Main
+     * @param functionsPerClass Number of functions in each generated class
+     * @param depth Number of layers, at most the number of classes
+     * @return Source of each file keyed by file name, like "Main.jack"
+     */
+    public Map<String, String> jackProgram(int classes, int functionsPerClass, int depth) {
+        checkLayers(classes, functionsPerClass, depth);
+        SplittableRandom random = new SplittableRandom(seed);
+        Map<String, String> files = new LinkedHashMap<>();
+
+        StringBuilder main = new StringBuilder("// Generated with seed ").append(seed).append('\n')
+                .append("class Main {\n")
+                .append("    function void main(int a) {\n");
+        for (int c = 0; c < classesInLayer(classes, depth, 0); c++) {
+            for (int f = 0; f < functionsPerClass; f++) {
+                main.append("        do ").append(jackClassName(c)).append('.').append(jackFunctionName(f))
+                        .append('(').append(jackExpression(random)).append(");\n");
+            }
+        }
+        files.put("Main.jack", main.append("        return;\n    }\n}\n").toString());
+
+        for (int c = 0; c < classes; c++) {
+            StringBuilder jack = new StringBuilder("class ").append(jackClassName(c)).append(" {\n");
+            int layer = layerOf(c, classes, depth);
+
+            for (int f = 0; f < functionsPerClass; f++) {
+                jack.append("\n    function void ").append(jackFunctionName(f)).append("(int a) {\n");
+
+                int statements = random.nextInt(1, 5);
+                for (int s = 0; s < statements; s++) {
+                    jack.append("        do Output.printInt(").append(jackExpression(random)).append(");\n");
+                }
+
+                if (layer + 1 < depth) {
+                    int callee = randomClassInLayer(random, classes, depth, layer + 1);
+                    jack.append("        do ").append(jackClassName(callee)).append('.')
+                            .append(jackFunctionName(random.nextInt(functionsPerClass)))
+                            .append('(').append(jackExpression(random)).append(");\n");
+                }
+
+                jack.append("        return;\n    }\n");
+            }
+
+            files.put(jackClassName(c) + ".jack", jack.append("}\n").toString());
+        }
+
+        return files;
+    }
+
+    /**
+     * Writes the files of a generated program into the directory, creating it if needed
+     */
+    public static void write(Map<String, String> files, Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            Files.writeString(directory.resolve(file.getKey()), file.getValue());
+        }
+    }
+
+
+    /**
+     * Appends a statement that leaves the stack as it was. Statements inside a loop never write local 0,
+     * as it holds the loop counter
+     */
+    private void vmStatement(StringBuilder vm, SplittableRandom random, String labelPrefix, int locals, int nesting) {
+        switch (random.nextInt(nesting == 0 ? 5 : 4)) {
+            case 0 -> {
+                vmPushSource(vm, random, locals);
+                vmPushSource(vm, random, locals);
+                vm.append(BINARY_OPERATIONS[random.nextInt(BINARY_OPERATIONS.length)]).append('\n');
+                vmPopDestination(vm, random, locals, nesting);
+            }
+            case 1 -> {
+                vmPushSource(vm, random, locals);
+                vm.append(UNARY_OPERATIONS[random.nextInt(UNARY_OPERATIONS.length)]).append('\n');
+                vmPopDestination(vm, random, locals, nesting);
+            }
+            case 2 -> {
+                // Array-like access through THAT
+                int index = random.nextInt(8);
+                vm.append("push constant ").append(random.nextInt(3000, 3090)).append('\n')
+                        .append("pop pointer 1\n")
+                        .append("push that ").append(index).append('\n');
+                vmPushSource(vm, random, locals);
+                vm.append("add\n")
+                        .append("pop that ").append(index).append('\n');
+            }
+            case 3 -> {
+                // Object-like access through THIS
+                int index = random.nextInt(8);
+                vm.append("push constant ").append(random.nextInt(3000, 3090)).append('\n')
+                        .append("pop pointer 0\n");
+                vmPushSource(vm, random, locals);
+                vm.append("pop this ").append(index).append('\n');
+            }
+            default -> {
+                // Counted loop on local 0
+                vm.append("push constant ").append(random.nextInt(1, 4)).append('\n')
+                        .append("pop local 0\n")
+                        .append("label ").append(labelPrefix).append("_LOOP\n")
+                        .append("push local 0\n")
+                        .append("push constant 0\n")
+                        .append("eq\n")
+                        .append("if-goto ").append(labelPrefix).append("_END\n");
+                vmStatement(vm, random, labelPrefix + "_", locals, nesting + 1);
+                vm.append("push local 0\n")
+                        .append("push constant 1\n")
+                        .append("sub\n")
+                        .append("pop local 0\n")
+                        .append("goto ").append(labelPrefix).append("_LOOP\n")
+                        .append("label ").append(labelPrefix).append("_END\n");
+            }
+        }
+    }
+
+    private void vmPushSource(StringBuilder vm, SplittableRandom random, int locals) {
+        switch (random.nextInt(5)) {
+            case 0 -> vm.append("push argument 0\n");
+            case 1 -> vm.append("push local ").append(random.nextInt(locals)).append('\n');
+            case 2 -> vm.append("push static ").append(random.nextInt(16)).append('\n');
+            case 3 -> vm.append("push temp ").append(random.nextInt(8)).append('\n');
+            default -> vm.append("push constant ").append(random.nextInt(32768)).append('\n');
+        }
+    }
+
+    private void vmPopDestination(StringBuilder vm, SplittableRandom random, int locals, int nesting) {
+        int firstLocal = nesting > 0 ? 1 : 0;
+
+        switch (random.nextInt(3)) {
+            case 0 -> {
+                if (firstLocal < locals) {
+                    vm.append("pop local ").append(random.nextInt(firstLocal, locals)).append('\n');
+                } else {
+                    vm.append("pop temp 1\n");
+                }
+            }
+            case 1 -> vm.append("pop static ").append(random.nextInt(16)).append('\n');
+            default -> vm.append("pop temp ").append(random.nextInt(8)).append('\n');
+        }
+    }
+
+    /**
+     * Integer expression of constants with + - * /, never dividing by zero
+     */
+    private String jackExpression(SplittableRandom random) {
+        StringBuilder expression = new StringBuilder().append(random.nextInt(1000));
+
+        for (int terms = random.nextInt(3); terms > 0; terms--) {
+            expression.append(' ').append(JACK_OPERATORS[random.nextInt(JACK_OPERATORS.length)])
+                    .append(' ').append(random.nextInt(1, 1000));
+        }
+        return expression.toString();
+    }
+
+    private String randomCInstruction(SplittableRandom random) {
+        String comp = COMPS[random.nextInt(COMPS.length)];
+
+        return switch (random.nextInt(3)) {
+            case 0 -> DESTS[random.nextInt(DESTS.length)] + "=" + comp;
+            case 1 -> comp + ";" + JUMPS[random.nextInt(JUMPS.length)];
+            default -> DESTS[random.nextInt(DESTS.length)] + "=" + comp + ";" + JUMPS[random.nextInt(JUMPS.length)];
+        };
+    }
+
+    private static void checkLayers(int classes, int functionsPerClass, int depth) {
+        if (classes < 1 || functionsPerClass < 1 || depth < 1 || depth > classes) {
+            throw new IllegalArgumentException("Needs at least one class and function, and from 1 to class count layers");
+        }
+    }
+
+    // Classes are split into layers of nearly equal size, in order
+    private static int layerOf(int classIndex, int classes, int depth) {
+        return (int) ((long) classIndex * depth / classes);
+    }
+
+    private static int classesInLayer(int classes, int depth, int layer) {
+        int count = 0;
+        for (int c = 0; c < classes; c++) {
+            if (layerOf(c, classes, depth) == layer) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int randomClassInLayer(SplittableRandom random, int classes, int depth, int layer) {
+        int first = 0;
+        while (layerOf(first, classes, depth) < layer) {
+            first++;
+        }
+        return first + random.nextInt(classesInLayer(classes, depth, layer));
+    }
+
+    private static String className(int classIndex) {
+        return "Gen" + classIndex;
+    }
+
+    // Jack identifiers can only have letters, so numbers are written with a to z
+    private static String jackClassName(int classIndex) {
+        return letters("Gen", classIndex);
+    }
+
+    private static String jackFunctionName(int functionIndex) {
+        return letters("sub", functionIndex);
+    }
+
+    private static String letters(String prefix, int number) {
+        StringBuilder name = new StringBuilder(prefix);
+        int start = name.length();
+
+        do {
+            name.insert(start, (char) ('a' + number % 26));
+            number /= 26;
+        } while (number > 0);
+
+        return name.toString();
+    }
+}
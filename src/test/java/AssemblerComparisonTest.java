@@ -1,13 +1,27 @@
 import nand.assembler.HackAssembler;
+import nand.assembler.RomBuilder;
+import nand.assembler.RomImage;
+import nand.assembler.process.OutputFormat;
+import nand.assembler.process.Parser;
+import nand.assembler.process.RomWriter;
+import nand.io.LineReader;
+import nand.workload.WorkloadGenerator;
 import org.junit.jupiter.api.*;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Comparator;
+import java.util.List;
 
 
 public class AssemblerComparisonTest {
@@ -72,6 +86,98 @@ public class AssemblerComparisonTest {
         Assertions.assertEquals(-1, failedLine, "comparison failed in line " + failedLine);
     }
 
+    @Test
+    @DisplayName("Assembling program held in memory")
+    public void testInMemory() throws Exception {
+        RomImage rom = HackAssembler.assemble("""
+                @2
+                D=A
+                (LOOP)
+                @LOOP
+                0;JMP
+                """);
+
+        Assertions.assertArrayEquals(new short[] {2, (short) 0b1110110000010000, 2, (short) 0b1110101010000111}, rom.words);
+        Assertions.assertEquals(2, rom.symbolTable.getAddress("LOOP"));
+    }
+
+    @Test
+    @DisplayName("Assembling in parallel chunks same as in a single pass")
+    public void testParallel() throws Exception {
+        final String source = new WorkloadGenerator(7).assembly(100000, 5000);
+        final String asmFile = outputDir + "Parallel.asm";
+        final String hackFile = outputDir + "Parallel.hack";
+        Assertions.assertTrue(LineReader.of(source).split(HackAssembler.PARALLEL_CHUNK_SIZE).size() > 1);
+
+        // Reader is never split, so it is assembled in a single pass
+        RomImage single = HackAssembler.assemble(new StringReader(source));
+        RomImage parallel = HackAssembler.assemble(source);
+
+        Assertions.assertArrayEquals(single.words, parallel.words);
+        for (int i = 0; i < 5000; i++) {
+            Assertions.assertEquals(single.symbolTable.getAddress("v_" + i), parallel.symbolTable.getAddress("v_" + i));
+        }
+
+        // Mapped file is split too
+        Files.writeString(Paths.get(asmFile), source);
+        HackAssembler.translate(asmFile, hackFile);
+        Assertions.assertEquals(StandardCharsets.US_ASCII.decode(new RomWriter().encode(single.words, OutputFormat.TEXT)).toString(),
+                Files.readString(Paths.get(hackFile)));
+    }
+
+    @Test
+    @DisplayName("Numbers too large for an A instruction are rejected, however many digits they have")
+    public void testLargeConstants() throws Exception {
+        for (String number : List.of("32768", "2147483647", "2147483648", "2147483649", "21474836480", "99999999999999999999")) {
+            Assertions.assertThrows(Exception.class, () -> HackAssembler.assemble("@" + number + "\n"), number);
+
+            RomBuilder rom = new RomBuilder();
+            Assertions.assertThrows(Exception.class, () -> rom.addSymbol(number), number);
+        }
+
+        // Values past Integer.MAX_VALUE saturate instead of wrapping around
+        Assertions.assertEquals(Integer.MAX_VALUE, Parser.constant("2147483648", 0, 10));
+        Assertions.assertEquals(Integer.MAX_VALUE, Parser.constant("2147483649", 0, 10));
+        Assertions.assertEquals(214748364, Parser.constant("214748364", 0, 9));
+        Assertions.assertEquals(-1, Parser.constant("12a", 0, 3));
+        Assertions.assertArrayEquals(new short[] {32767}, HackAssembler.assemble("@32767\n").words);
+    }
+
+    @Test
+    @DisplayName("Assembling file with non-ASCII label and variable")
+    public void testNonAsciiSymbols() throws Exception {
+        final String asmFile = outputDir + "Umlaut.asm";
+        final String hackFile = outputDir + "Umlaut.hack";
+        final short[] expected = {16, (short) 0b1111110000010000, 6, (short) 0b1110101010000111, 16, (short) 0b1110001100001000, 16, 6};
+
+        Files.writeString(Paths.get(asmFile), """
+                @vär
+                D=M
+                @ÄLOOP
+                0;JMP
+                @vär
+                M=D
+                (ÄLOOP)
+                @vär
+                @ÄLOOP
+                """, StandardCharsets.UTF_8);
+
+        // File is read as bytes
+        HackAssembler.translate(asmFile, hackFile, OutputFormat.BINARY);
+        Assertions.assertArrayEquals(expected, readWords(hackFile));
+
+        try (InputStream input = Files.newInputStream(Paths.get(asmFile))) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            HackAssembler.translate(input, output, OutputFormat.BINARY);
+            Assertions.assertArrayEquals(Files.readAllBytes(Paths.get(hackFile)), output.toByteArray());
+        }
+
+        RomImage rom = HackAssembler.assemble(Files.readString(Paths.get(asmFile)));
+        Assertions.assertArrayEquals(expected, rom.words);
+        Assertions.assertEquals(6, rom.symbolTable.getAddress("ÄLOOP"));
+        Assertions.assertEquals(16, rom.symbolTable.getAddress("vär"));
+    }
+
     @AfterAll
     // Delete temp folder of output files
     public static void flushTestFolder() throws IOException {
@@ -81,6 +187,13 @@ public class AssemblerComparisonTest {
                 .forEach(File::delete);
     }
 
+    public static short[] readWords(String binFile) throws IOException {
+        ShortBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(binFile))).asShortBuffer();
+        short[] words = new short[buffer.remaining()];
+        buffer.get(words);
+        return words;
+    }
+
     // Copied from https://www.baeldung.com/java-compare-files
     public static long filesCompareByLine(Path path1, Path path2) throws IOException {
         try (BufferedReader bf1 = Files.newBufferedReader(path1);
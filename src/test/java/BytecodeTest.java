@@ -0,0 +1,208 @@
+import nand.jack_compiler.process.VMWriter;
+import nand.vm_translator.VMTranslator;
+import nand.vm_translator.process.Optimization;
+import nand.vm_translator.process.Parser;
+import nand.vm_translator.process.command.ArithmeticType;
+import nand.vm_translator.process.command.Bytecode;
+import nand.vm_translator.process.command.Command;
+import nand.vm_translator.process.command.CommandType;
+import nand.vm_translator.process.command.SegmentType;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+
+public class BytecodeTest {
+    public static final String inputDir = "./src/test/resources/vm/";
+    public static final String outputDir = "./src/test/tempBytecode/";
+
+    @BeforeAll
+    // Create temp folder for outputted files
+    public static void setUpTestFolder() {
+        new File(outputDir).mkdirs();
+    }
+
+    @Test
+    @DisplayName("Translating bytecode same as the text it was made from")
+    public void testRoundTrip() throws Exception {
+        for (String program : List.of("Calls", "Mix", "Points", "Constants", "Cache")) {
+            File bytecodeDir = new File(outputDir, program);
+            bytecodeDir.mkdirs();
+
+            // Files are compared one by one, as files of a folder other than Sys come in the order it lists them
+            for (File file : Parser.vmFiles(inputDir + program)) {
+                File bytecodeFile = new File(bytecodeDir, Parser.className(file) + Bytecode.EXTENSION);
+                writeBytecode(file, bytecodeFile);
+
+                for (Set<Optimization> optimizations : List.of(EnumSet.noneOf(Optimization.class), EnumSet.allOf(Optimization.class))) {
+                    Assertions.assertEquals(translate(file.getPath(), optimizations), translate(bytecodeFile.getPath(), optimizations),
+                            file + " with " + optimizations);
+                }
+            }
+            Assertions.assertTrue(Parser.vmFiles(bytecodeDir.getPath()).stream().allMatch(file -> file.getName().endsWith(Bytecode.EXTENSION)));
+            Assertions.assertEquals(OptimizationTest.run(OptimizationTest.assemble(inputDir + program, EnumSet.noneOf(Optimization.class))),
+                    OptimizationTest.run(OptimizationTest.assemble(bytecodeDir.getPath(), EnumSet.noneOf(Optimization.class))), program);
+        }
+    }
+
+    @Test
+    @DisplayName("Names written in full once, then by their number")
+    public void testNames() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        VMWriter writer = new VMWriter(output, true);
+        writer.writeFunction("Main.main", 2);
+        writer.writeLabel("LOOP");
+        writer.writeCall("Main.main", 0);
+        writer.writeGoto("LOOP");
+        writer.writePush(SegmentType.S_LOCAL, 300);
+        writer.writeArithmetic(ArithmeticType.A_NOT);
+        writer.flush();
+
+        Assertions.assertArrayEquals(new byte[] {'V', 'M', 'B', 1,
+                (byte) Bytecode.opcode(CommandType.C_FUNCTION, null), 0, 9, 'M', 'a', 'i', 'n', '.', 'm', 'a', 'i', 'n', 2,
+                (byte) Bytecode.opcode(CommandType.C_LABEL, null), 0, 4, 'L', 'O', 'O', 'P',
+                (byte) Bytecode.opcode(CommandType.C_CALL, null), 1, 0,
+                (byte) Bytecode.opcode(CommandType.C_GOTO, null), 2,
+                (byte) Bytecode.opcode(CommandType.C_PUSH, null), (byte) SegmentType.S_LOCAL.ordinal(), (byte) 0xAC, 2,
+                (byte) Bytecode.opcode(CommandType.C_ARITHMETIC, ArithmeticType.A_NOT)}, output.toByteArray());
+
+        List<Command> commands = read(output.toByteArray());
+        Assertions.assertEquals(List.of(
+                Command.function(CommandType.C_FUNCTION, "Main.main", 2, "Main.vm"),
+                Command.named(CommandType.C_LABEL, "LOOP", "Main.vm"),
+                Command.function(CommandType.C_CALL, "Main.main", 0, "Main.vm"),
+                Command.named(CommandType.C_GOTO, "LOOP", "Main.vm"),
+                Command.pushPop(CommandType.C_PUSH, SegmentType.S_LOCAL, 300, "Main.vm"),
+                Command.arithmetic(ArithmeticType.A_NOT, "Main.vm")), commands);
+
+        // Name read back by its number is the String read in full
+        Assertions.assertSame(commands.get(0).name(), commands.get(2).name());
+        Assertions.assertSame(commands.get(1).name(), commands.get(3).name());
+    }
+
+    @Test
+    @DisplayName("Broken bytecode")
+    public void testBroken() {
+        final byte push = (byte) Bytecode.opcode(CommandType.C_PUSH, null);
+        final byte call = (byte) Bytecode.opcode(CommandType.C_CALL, null);
+
+        // Command cut short
+        assertBroken(push);
+        assertBroken(push, (byte) SegmentType.S_LOCAL.ordinal());
+        assertBroken(push, (byte) SegmentType.S_LOCAL.ordinal(), (byte) 0x80);
+        assertBroken(call, 0, 5, 'M', 'a');
+        assertBroken(call, 0, 1, 'M');
+
+        // Opcodes, segments and names that are not there
+        assertBroken((byte) 0xF0);
+        assertBroken((byte) Bytecode.opcode(CommandType.C_ARITHMETIC, null) | 0xF);
+        assertBroken(push, (byte) SegmentType.values().length, 0);
+        assertBroken(call, 1, 0);
+        assertBroken(push, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0);
+
+        // Not bytecode
+        Assertions.assertThrows(IOException.class, () -> new Parser(ByteBuffer.wrap("push constant 1\n".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    @DisplayName("Newer of .vm and .vmb file of a class is read, bytecode if they are as new")
+    public void testVmFiles() throws Exception {
+        final File dir = new File(outputDir, "Files");
+        final long time = System.currentTimeMillis() - 100_000;
+        dir.mkdirs();
+
+        for (String name : List.of("Main.vm", "Main.vmb", "Sys.vm", "Other.vmb", "Notes.txt")) {
+            Assertions.assertTrue(new File(dir, name).createNewFile());
+            Assertions.assertTrue(new File(dir, name).setLastModified(time));
+        }
+
+        Assertions.assertEquals(List.of("Sys.vm", "Main.vmb", "Other.vmb"), names(Parser.vmFiles(dir.getPath())));
+
+        Assertions.assertTrue(new File(dir, "Main.vm").setLastModified(time + 1000));
+        Assertions.assertEquals(List.of("Sys.vm", "Main.vm", "Other.vmb"), names(Parser.vmFiles(dir.getPath())));
+
+        Assertions.assertTrue(new File(dir, "Main.vmb").setLastModified(time + 2000));
+        Assertions.assertEquals(List.of("Sys.vm", "Main.vmb", "Other.vmb"), names(Parser.vmFiles(dir.getPath())));
+    }
+
+    @AfterAll
+    // Delete temp folder of output files
+    public static void flushTestFolder() throws IOException {
+        Files.walk(Paths.get(outputDir))
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    /**
+     * Writes commands of the text file as bytecode, the way the Jack compiler does
+     */
+    public static void writeBytecode(File vmFile, File bytecodeFile) throws Exception {
+        Parser parser = new Parser(vmFile.getPath());
+        VMWriter writer = new VMWriter(bytecodeFile.getPath(), true);
+
+        while (parser.hasMoreLines()) {
+            parser.advance();
+            Command command = parser.command();
+
+            switch (command.type()) {
+                case C_ARITHMETIC -> writer.writeArithmetic(command.operation());
+                case C_PUSH -> writer.writePush(command.segment(), command.index());
+                case C_POP -> writer.writePop(command.segment(), command.index());
+                case C_LABEL -> writer.writeLabel(command.name());
+                case C_GOTO -> writer.writeGoto(command.name());
+                case C_IF -> writer.writeIf(command.name());
+                case C_FUNCTION -> writer.writeFunction(command.name(), command.index());
+                case C_CALL -> writer.writeCall(command.name(), command.index());
+                case C_RETURN -> writer.writeReturn();
+            }
+        }
+        writer.close();
+    }
+
+    public static String translate(String input, Set<Optimization> optimizations) throws Exception {
+        ByteArrayOutputStream assembly = new ByteArrayOutputStream();
+        VMTranslator.translate(input, assembly, optimizations);
+        return assembly.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Commands of the bytecode, read from memory as from a stream
+     */
+    public static List<Command> read(byte[] bytecode) throws IOException {
+        Parser parser = new Parser(ByteBuffer.wrap(bytecode));
+        List<Command> commands = new ArrayList<>();
+
+        while (parser.hasMoreLines()) {
+            parser.advance();
+            commands.add(parser.command());
+        }
+        return commands;
+    }
+
+    public static void assertBroken(int... bytes) {
+        byte[] bytecode = new byte[Bytecode.MAGIC.length + bytes.length];
+        System.arraycopy(Bytecode.MAGIC, 0, bytecode, 0, Bytecode.MAGIC.length);
+        for (int i = 0; i < bytes.length; i++) {
+            bytecode[Bytecode.MAGIC.length + i] = (byte) bytes[i];
+        }
+
+        Assertions.assertThrows(IOException.class, () -> read(bytecode));
+    }
+
+    private static List<String> names(List<File> files) {
+        return files.stream().map(File::getName).toList();
+    }
+}
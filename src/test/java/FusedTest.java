@@ -0,0 +1,147 @@
+import nand.assembler.HackAssembler;
+import nand.assembler.RomBuilder;
+import nand.assembler.process.OutputFormat;
+import nand.vm_translator.VMTranslator;
+import nand.vm_translator.process.Code;
+import nand.vm_translator.process.Inliner;
+import nand.vm_translator.process.Optimization;
+import nand.vm_translator.process.RomOutput;
+import nand.workload.WorkloadGenerator;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+
+public class FusedTest {
+    public static final String inputDir = "./src/test/resources/vm/";
+    public static final String outputDir = "./src/test/tempFused/";
+    public static final List<String> programs = List.of("Calls", "Mix", "Points", "Constants", "Cache");
+
+    @BeforeAll
+    // Create temp folder for generated programs
+    public static void setUpTestFolder() {
+        new File(outputDir).mkdirs();
+    }
+
+    @Test
+    @DisplayName("Machine code of folders same as assembled translation, with every set of optimizations")
+    public void testFolders() throws Exception {
+        for (String program : programs) {
+            for (Set<Optimization> optimizations : optimizationSets()) {
+                String input = inputDir + program;
+                Assertions.assertArrayEquals(assembled(input, optimizations), fused(input, optimizations), program + " with " + optimizations);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Machine code of single files same as assembled translation")
+    public void testFiles() throws Exception {
+        for (String program : programs) {
+            for (File file : new File(inputDir + program).listFiles()) {
+                for (Set<Optimization> optimizations : List.of(EnumSet.noneOf(Optimization.class), EnumSet.allOf(Optimization.class))) {
+                    Assertions.assertArrayEquals(assembled(file.getPath(), optimizations), fused(file.getPath(), optimizations), file + " with " + optimizations);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Machine code of standard input same as assembled translation")
+    public void testStandardInput() throws Exception {
+        final String vmProgram = StreamingTest.vmProgram;
+
+        String assembly = StreamingTest.runMain(vmProgram, new ByteArrayOutputStream(), "vmTranslator", "-i", "-", "-o", "-");
+        String expected = StreamingTest.runMain(assembly, new ByteArrayOutputStream(), "assembler", "-i", "-", "-o", "-");
+        String output = StreamingTest.runMain(vmProgram, new ByteArrayOutputStream(), "vmTranslator", "-i", "-", "-o", "-", "-f", "hack");
+
+        Assertions.assertEquals(expected, output);
+        Assertions.assertTrue(output.length() > 0);
+    }
+
+    @Test
+    @DisplayName("Machine code of generated program same as assembled translation")
+    public void testGeneratedProgram() throws Exception {
+        final Path vmDir = Paths.get(outputDir, "Vm");
+        WorkloadGenerator.write(new WorkloadGenerator(42).vmProgram(6, 8, 3), vmDir);
+
+        for (Set<Optimization> optimizations : List.of(EnumSet.noneOf(Optimization.class), EnumSet.allOf(Optimization.class))) {
+            Assertions.assertArrayEquals(assembled(vmDir.toString(), optimizations), fused(vmDir.toString(), optimizations));
+        }
+    }
+
+    @Test
+    @DisplayName("Code writing machine code has no assembly text")
+    public void testNoText() throws Exception {
+        RomBuilder rom = new RomBuilder();
+        Code code = new Code(new RomOutput(rom), EnumSet.noneOf(Optimization.class), "");
+
+        code.writeBootstrap(true);
+        code.writeEnd();
+
+        Assertions.assertNull(code.output());
+        Assertions.assertTrue(rom.build().words.length > 0);
+    }
+
+    @AfterAll
+    // Delete temp folder of generated programs
+    public static void flushTestFolder() throws IOException {
+        Files.walk(Paths.get(outputDir))
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    /**
+     * Every set of optimizations, the empty one included
+     */
+    public static List<Set<Optimization>> optimizationSets() {
+        Optimization[] all = Optimization.values();
+        List<Set<Optimization>> sets = new ArrayList<>();
+
+        for (int mask = 0; mask < 1 << all.length; mask++) {
+            Set<Optimization> optimizations = EnumSet.noneOf(Optimization.class);
+            for (int i = 0; i < all.length; i++) {
+                if ((mask & 1 << i) != 0) {
+                    optimizations.add(all[i]);
+                }
+            }
+            sets.add(optimizations);
+        }
+        return sets;
+    }
+
+    /**
+     * Machine code the translator encodes straight away, in binary format
+     */
+    public static byte[] fused(String input, Set<Optimization> optimizations) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        VMTranslator.assemble(input, output, OutputFormat.BINARY, optimizations, Inliner.DEFAULT_MAX_SIZE);
+        return output.toByteArray();
+    }
+
+    /**
+     * Machine code of the assembly text the translator writes, in binary format
+     */
+    public static byte[] assembled(String input, Set<Optimization> optimizations) throws Exception {
+        ByteArrayOutputStream assembly = new ByteArrayOutputStream();
+        VMTranslator.translate(input, assembly, optimizations, Inliner.DEFAULT_MAX_SIZE);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HackAssembler.translate(new ByteArrayInputStream(assembly.toByteArray()), output, OutputFormat.BINARY);
+        Assertions.assertTrue(assembly.toString(StandardCharsets.UTF_8).length() > 0);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Hack CPU running machine code until the program ends, for checking what translated programs do
+ */
+public class HackEmulator {
+    public static final int MAX_CYCLES = 10_000_000;
+
+    public final int[] ram = new int[32768];
+    public long cycles = 0;
+
+    /**
+     * Runs from address 0 until the program reaches an endless loop of '@LOOP' and '0;JMP' back to it
+     *
+     * @return false if the program did not end within MAX_CYCLES or jumped out of the ROM
+     */
+    public boolean run(short[] rom) {
+        int a = 0;
+        int d = 0;
+        int pc = 0;
+
+        while (cycles < MAX_CYCLES && pc >= 0 && pc < rom.length) {
+            int instruction = rom[pc] & 0xFFFF;
+            cycles++;
+
+            if ((instruction & 0x8000) == 0) {
+                a = instruction;
+                pc++;
+                continue;
+            }
+
+            int y = (instruction & 0x1000) != 0 ? ram[a & 0x7FFF] : a;
+            int result = (short) switch (instruction >>> 6 & 0x3F) {
+                case 0b101010 -> 0;
+                case 0b111111 -> 1;
+                case 0b111010 -> -1;
+                case 0b001100 -> d;
+                case 0b110000 -> y;
+                case 0b001101 -> ~d;
+                case 0b110001 -> ~y;
+                case 0b001111 -> -d;
+                case 0b110011 -> -y;
+                case 0b011111 -> d + 1;
+                case 0b110111 -> y + 1;
+                case 0b001110 -> d - 1;
+                case 0b110010 -> y - 1;
+                case 0b000010 -> d + y;
+                case 0b010011 -> d - y;
+                case 0b000111 -> y - d;
+                case 0b000000 -> d & y;
+                case 0b010101 -> d | y;
+                default -> throw new IllegalStateException("Unknown computation at " + pc);
+            };
+
+            // Memory is written at the address A had before this instruction
+            int address = a & 0x7FFF;
+            if ((instruction & 0b001000) != 0) {
+                ram[address] = result;
+            }
+            if ((instruction & 0b100000) != 0) {
+                a = result & 0xFFFF;
+            }
+            if ((instruction & 0b010000) != 0) {
+                d = result;
+            }
+
+            boolean jump = (instruction & 0b100) != 0 && result < 0
+                    || (instruction & 0b010) != 0 && result == 0
+                    || (instruction & 0b001) != 0 && result > 0;
+            if (!jump) {
+                pc++;
+            } else if ((instruction & 0b111) == 0b111 && a == pc - 1 && rom[pc - 1] == a) {
+                return true;
+            } else {
+                pc = a;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Value of the word as a signed number
+     */
+    public int get(int address) {
+        return (short) ram[address];
+    }
+}
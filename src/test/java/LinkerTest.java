@@ -0,0 +1,130 @@
+import nand.assembler.HackAssembler;
+import nand.assembler.ObjectFile;
+import nand.assembler.process.OutputFormat;
+import nand.vm_translator.VMTranslator;
+import nand.vm_translator.process.Inliner;
+import nand.vm_translator.process.Optimization;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+
+public class LinkerTest {
+    public static final String inputDir = "./src/test/resources/vm/";
+    public static final String outputDir = "./src/test/tempLinker/";
+
+    // Objects are written next to the .vm files, so programs are copied to the temp folder
+    public static final List<String> programs = List.of("Calls", "Mix", "Points", "Constants", "Cache");
+
+    @BeforeAll
+    // Create temp folder with copies of the programs
+    public static void setUpTestFolder() throws IOException {
+        for (String program : programs) {
+            new File(outputDir + program).mkdirs();
+            for (File file : new File(inputDir + program).listFiles()) {
+                Files.copy(file.toPath(), Paths.get(outputDir, program, file.getName()));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Linked objects same as assembled translation")
+    public void testSameAsAssembled() throws Exception {
+        for (String program : programs) {
+            for (Set<Optimization> optimizations : List.of(EnumSet.noneOf(Optimization.class), EnumSet.allOf(Optimization.class))) {
+                Assertions.assertEquals(assembled(program, optimizations), linked(program, optimizations), program + " with " + optimizations);
+
+                // Second run links the objects of the first
+                Assertions.assertEquals(assembled(program, optimizations), linked(program, optimizations), program + " linked again");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Objects reused until their file or the optimizations change")
+    public void testReuse() throws Exception {
+        final String program = "Points";
+        final Set<Optimization> optimizations = EnumSet.of(Optimization.PEEPHOLE);
+        final long before = System.currentTimeMillis() - 100_000;
+        final String expected = assembled(program, optimizations);
+        File vmFile = new File(outputDir + program, "Point.vm");
+        File objectFile = new File(outputDir + program, "Point" + ObjectFile.EXTENSION);
+
+        Assertions.assertEquals(expected, linked(program, optimizations));
+        Assertions.assertTrue(objectFile.exists());
+
+        // Object newer than the file is not written again
+        Assertions.assertTrue(vmFile.setLastModified(before));
+        Assertions.assertTrue(objectFile.setLastModified(before + 10_000));
+        Assertions.assertEquals(expected, linked(program, optimizations));
+        Assertions.assertEquals(before + 10_000, objectFile.lastModified());
+
+        // Changed file
+        Assertions.assertTrue(vmFile.setLastModified(before + 20_000));
+        Assertions.assertEquals(expected, linked(program, optimizations));
+        Assertions.assertTrue(objectFile.lastModified() > before + 20_000);
+
+        // Other optimizations
+        Assertions.assertTrue(objectFile.setLastModified(before + 30_000));
+        Assertions.assertEquals(assembled(program, EnumSet.noneOf(Optimization.class)), linked(program, EnumSet.noneOf(Optimization.class)));
+        Assertions.assertTrue(objectFile.lastModified() > before + 30_000);
+        Assertions.assertEquals("", ObjectFile.read(objectFile.getPath()).tag);
+
+        // Object that can not be read
+        Files.writeString(objectFile.toPath(), "not an object");
+        Assertions.assertTrue(objectFile.setLastModified(before + 40_000));
+        Assertions.assertEquals(expected, linked(program, optimizations));
+        Assertions.assertTrue(objectFile.lastModified() > before + 40_000);
+        Assertions.assertEquals(Optimization.PEEPHOLE.label, ObjectFile.read(objectFile.getPath()).tag);
+    }
+
+    @Test
+    @DisplayName("Linking standard input is refused on standard error")
+    public void testStandardInput() {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        StreamingTest.runMain("", log, "vmTranslator", "-l", "-i", "-", "-o", outputDir + "Stdin.hack");
+
+        Assertions.assertTrue(log.toString().contains("Linking needs .vm files, not standard input"), log.toString());
+        Assertions.assertFalse(new File(outputDir + "Stdin.hack").exists());
+    }
+
+    @AfterAll
+    // Delete temp folder of copied programs and their objects
+    public static void flushTestFolder() throws IOException {
+        Files.walk(Paths.get(outputDir))
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    /**
+     * Machine code linked from objects of the program, in hack text format
+     */
+    public static String linked(String program, Set<Optimization> optimizations) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        VMTranslator.link(outputDir + program, output, OutputFormat.TEXT, optimizations, Inliner.DEFAULT_MAX_SIZE);
+        return output.toString();
+    }
+
+    /**
+     * Machine code of the assembly the program translates to, in hack text format
+     */
+    public static String assembled(String program, Set<Optimization> optimizations) throws Exception {
+        ByteArrayOutputStream assembly = new ByteArrayOutputStream();
+        VMTranslator.translate(outputDir + program, assembly, optimizations, Inliner.DEFAULT_MAX_SIZE);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HackAssembler.translate(new ByteArrayInputStream(assembly.toByteArray()), output, OutputFormat.TEXT);
+        return output.toString();
+    }
+}
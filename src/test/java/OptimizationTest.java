@@ -0,0 +1,620 @@
+import nand.assembler.HackAssembler;
+import nand.assembler.RomImage;
+import nand.vm_translator.VMTranslator;
+import nand.vm_translator.process.CallGraph;
+import nand.vm_translator.process.Code;
+import nand.vm_translator.process.Inliner;
+import nand.vm_translator.process.Optimization;
+import nand.vm_translator.process.Parser;
+import nand.vm_translator.process.Peephole;
+import nand.vm_translator.process.command.ArithmeticType;
+import nand.vm_translator.process.command.Command;
+import nand.vm_translator.process.command.CommandType;
+import nand.vm_translator.process.command.SegmentType;
+import nand.workload.WorkloadGenerator;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+
+public class OptimizationTest {
+    public static final String inputDir = "./src/test/resources/vm/";
+    public static final String outputDir = "./src/test/tempOptimization/";
+
+    // Folders of inputDir, and a generated program in outputDir
+    public static final List<String> programs = List.of(inputDir + "Calls", inputDir + "Mix", inputDir + "Points",
+            inputDir + "Constants", inputDir + "Cache", outputDir + "Generated");
+
+    @BeforeAll
+    // Create temp folder with the generated program
+    public static void setUpTestFolder() throws IOException {
+        new File(outputDir).mkdirs();
+        WorkloadGenerator.write(new WorkloadGenerator(42).vmProgram(4, 4, 3), Paths.get(outputDir, "Generated"));
+    }
+
+    @Test
+    @DisplayName("Running translated program without optimizations")
+    public void testUnoptimized() throws Exception {
+        Map<String, Integer> result = run(assemble(inputDir + "Calls", EnumSet.noneOf(Optimization.class)));
+
+        Assertions.assertEquals(55, (int) result.get("Sys.0"));
+        Assertions.assertEquals(5040, (int) result.get("Sys.1"));
+        Assertions.assertEquals(21, (int) result.get("Sys.2"));
+    }
+
+    @Test
+    @DisplayName("Shared call and return routines")
+    public void testSharedCalls() throws Exception {
+        assertSameResults(EnumSet.of(Optimization.SHARED_CALLS));
+        assertSmaller(inputDir + "Calls", EnumSet.of(Optimization.SHARED_CALLS));
+    }
+
+    @Test
+    @DisplayName("Shared eq, gt and lt routines")
+    public void testSharedComparisons() throws Exception {
+        final String program = outputDir + "Compare";
+        StringBuilder sys = new StringBuilder("function Sys.init 0\n");
+        int[][] pairs = {{3, 4}, {4, 3}, {4, 4}, {-2, 5}, {5, -2}, {0, 0}};
+        String[] operations = {"eq", "gt", "lt"};
+
+        // Result of operation j on pair i goes to static 3 * i + j
+        for (int i = 0; i < pairs.length; i++) {
+            for (int j = 0; j < operations.length; j++) {
+                sys.append(push(pairs[i][0])).append(push(pairs[i][1]))
+                        .append(operations[j]).append('\n')
+                        .append("pop static ").append(3 * i + j).append('\n');
+            }
+        }
+        WorkloadGenerator.write(Map.of("Sys.vm", sys.append("label HALT\ngoto HALT\n").toString()), Paths.get(program));
+
+        for (Set<Optimization> optimizations : List.of(EnumSet.noneOf(Optimization.class), EnumSet.of(Optimization.SHARED_COMPARISONS))) {
+            Map<String, Integer> result = run(assemble(program, optimizations));
+
+            for (int i = 0; i < pairs.length; i++) {
+                Assertions.assertEquals(pairs[i][0] == pairs[i][1] ? -1 : 0, (int) result.getOrDefault("Sys." + (3 * i), 0));
+                Assertions.assertEquals(pairs[i][0] > pairs[i][1] ? -1 : 0, (int) result.getOrDefault("Sys." + (3 * i + 1), 0));
+                Assertions.assertEquals(pairs[i][0] < pairs[i][1] ? -1 : 0, (int) result.getOrDefault("Sys." + (3 * i + 2), 0));
+            }
+        }
+
+        assertSameResults(EnumSet.of(Optimization.SHARED_COMPARISONS));
+        assertSmaller(program, EnumSet.of(Optimization.SHARED_COMPARISONS));
+    }
+
+    @Test
+    @DisplayName("Peephole patterns")
+    public void testPeephole() throws Exception {
+        // Arithmetic on constants, comparisons overflowing as they do in Hack
+        assertPeephole(List.of(constant(3), constant(4), arithmetic(ArithmeticType.A_ADD), constant(2), arithmetic(ArithmeticType.A_SUB)),
+                code -> code.write(constant(5)));
+        assertPeephole(List.of(constant(32767), constant(1), arithmetic(ArithmeticType.A_NEG), arithmetic(ArithmeticType.A_GT)),
+                code -> code.write(constant(0)));
+        assertPeephole(List.of(constant(5), arithmetic(ArithmeticType.A_NOT), constant(5), arithmetic(ArithmeticType.A_LT)),
+                code -> code.write(constant(-1)));
+
+        // Push followed by pop
+        Command push = pushPop(CommandType.C_PUSH, SegmentType.S_LOCAL, 2);
+        Command pop = pushPop(CommandType.C_POP, SegmentType.S_STATIC, 3);
+        assertPeephole(List.of(push, pop), code -> code.writeMove(push, pop));
+        assertPeephole(List.of(pushPop(CommandType.C_PUSH, SegmentType.S_THAT, 1), pushPop(CommandType.C_POP, SegmentType.S_THAT, 1)),
+                code -> {});
+        assertPeephole(List.of(push, pushPop(CommandType.C_POP, SegmentType.S_CONSTANT, 1)),
+                code -> List.of(push, pushPop(CommandType.C_POP, SegmentType.S_CONSTANT, 1)).forEach(code::write));
+
+        // Conditional jumps
+        assertPeephole(List.of(push, arithmetic(ArithmeticType.A_NOT), named(CommandType.C_IF, "L")),
+                code -> {
+                    code.write(push);
+                    code.writeIfNotGoTo("L");
+                });
+        assertPeephole(List.of(push, push, arithmetic(ArithmeticType.A_GT), arithmetic(ArithmeticType.A_NOT), named(CommandType.C_IF, "L")),
+                code -> {
+                    code.write(push);
+                    code.write(push);
+                    code.writeIfNotComparisonGoTo(ArithmeticType.A_GT, "L");
+                });
+        assertPeephole(List.of(constant(0), named(CommandType.C_IF, "L")), code -> {});
+        assertPeephole(List.of(constant(-1), named(CommandType.C_IF, "L")), code -> code.writeGoTo("L"));
+
+        // Code can be entered at a label, so nothing is folded over it
+        List<Command> overLabel = List.of(constant(1), named(CommandType.C_LABEL, "L"), constant(2), arithmetic(ArithmeticType.A_ADD));
+        assertPeephole(overLabel, code -> overLabel.forEach(code::write));
+
+        assertSameResults(EnumSet.of(Optimization.PEEPHOLE));
+        assertSmaller(inputDir + "Constants", EnumSet.of(Optimization.PEEPHOLE));
+    }
+
+    @Test
+    @DisplayName("Jumps on not of numbers and of comparisons")
+    public void testIfNot() throws Exception {
+        final String program = outputDir + "IfNot";
+        int[] values = {5, 0, -1, 1, -2};
+        int[][] pairs = {{3, 4}, {4, 3}, {4, 4}, {-2, 5}};
+        String[] operations = {"eq", "gt", "lt"};
+        StringBuilder sys = new StringBuilder("function Sys.init 0\n");
+
+        // Values are read from statics, so they are not constants to fold. Jump taken leaves 2 in the result, else 1
+        for (int i = 0; i < values.length; i++) {
+            sys.append(push(values[i])).append("pop static ").append(i).append('\n')
+                    .append("push static ").append(i).append('\n')
+                    .append("not\n");
+            appendJumpResult(sys, "N" + i, 10 + i);
+        }
+        for (int i = 0; i < pairs.length; i++) {
+            for (int j = 0; j < operations.length; j++) {
+                sys.append(push(pairs[i][0])).append("pop static 0\n")
+                        .append("push static 0\n").append(push(pairs[i][1]))
+                        .append(operations[j]).append('\n')
+                        .append("not\n");
+                appendJumpResult(sys, "C" + i + "_" + j, 20 + 3 * i + j);
+            }
+        }
+        WorkloadGenerator.write(Map.of("Sys.vm", sys.append("label HALT\ngoto HALT\n").toString()), Paths.get(program));
+
+        for (Set<Optimization> optimizations : List.of(EnumSet.noneOf(Optimization.class), EnumSet.of(Optimization.PEEPHOLE),
+                EnumSet.of(Optimization.PEEPHOLE, Optimization.CACHE_TOP), EnumSet.allOf(Optimization.class))) {
+            Map<String, Integer> result = run(assemble(program, optimizations));
+
+            // Not of a number jumps unless the number is -1, whose bits are all set
+            for (int i = 0; i < values.length; i++) {
+                Assertions.assertEquals(values[i] != -1 ? 2 : 1, (int) result.get("Sys." + (10 + i)), values[i] + " with " + optimizations);
+            }
+            for (int i = 0; i < pairs.length; i++) {
+                boolean[] compared = {pairs[i][0] == pairs[i][1], pairs[i][0] > pairs[i][1], pairs[i][0] < pairs[i][1]};
+                for (int j = 0; j < operations.length; j++) {
+                    Assertions.assertEquals(compared[j] ? 1 : 2, (int) result.get("Sys." + (20 + 3 * i + j)),
+                            operations[j] + " of " + pairs[i][0] + ", " + pairs[i][1] + " with " + optimizations);
+                }
+            }
+        }
+
+        assertSmaller(program, EnumSet.of(Optimization.PEEPHOLE));
+    }
+
+    @Test
+    @DisplayName("Top of stack cached in D across labels, jumps, calls and returns")
+    public void testCacheTop() throws Exception {
+        final String program = inputDir + "Cache";
+
+        for (Set<Optimization> optimizations : List.of(EnumSet.of(Optimization.CACHE_TOP),
+                EnumSet.of(Optimization.CACHE_TOP, Optimization.SHARED_CALLS, Optimization.SHARED_COMPARISONS))) {
+            Map<String, Integer> result = run(assemble(program, optimizations));
+
+            Assertions.assertEquals(11, (int) result.get("Sys.0"));
+            Assertions.assertEquals(38, (int) result.get("Sys.1"));
+            Assertions.assertEquals(9, (int) result.get("Sys.2"));
+            Assertions.assertEquals(-1, (int) result.get("Sys.3"));
+            Assertions.assertFalse(result.containsKey("Sys.4"));
+        }
+
+        // Value pushed last is written to the stack before the label, where code also comes from the jump back
+        Assertions.assertTrue(translate(program, EnumSet.of(Optimization.CACHE_TOP), Inliner.DEFAULT_MAX_SIZE).contains("""
+                @3
+                D=A
+                // spill top of stack
+                @SP
+                M=M+1
+                A=M-1
+                M=D
+                // label COUNT
+                """));
+
+        assertSameResults(EnumSet.of(Optimization.CACHE_TOP));
+        assertSmaller(inputDir + "Mix", EnumSet.of(Optimization.CACHE_TOP));
+    }
+
+    @Test
+    @DisplayName("Push and pop at small and large indices of every segment")
+    public void testSegments() throws Exception {
+        final String program = outputDir + "Segments";
+        final int size = 10;
+        StringBuilder sys = new StringBuilder("""
+                function Sys.init 0
+                push constant 3000
+                pop pointer 0
+                push constant 4000
+                pop pointer 1
+                """);
+        StringBuilder fill = new StringBuilder("function Segments.fill " + size + "\n");
+
+        // Indices stepped to, up to MAX_PUSH_STEPS on push and MAX_POINTER_STEPS on pop, and calculated past them
+        for (int i = 0; i < size; i++) {
+            sys.append("push constant ").append(100 + i).append('\n');
+            fill.append("push argument ").append(i).append("\npop local ").append(i).append('\n');
+        }
+        sys.append("call Segments.fill ").append(size).append("\npop static 0\nlabel HALT\ngoto HALT\n");
+
+        for (int i = 0; i < size; i++) {
+            fill.append("push local ").append(i).append("\npush constant 100\nadd\npop this ").append(i).append('\n')
+                    .append("push this ").append(i).append("\npop that ").append(i).append('\n')
+                    .append("push constant ").append(300 + i).append("\npop argument ").append(i).append('\n')
+                    .append("push argument ").append(i).append("\npop that ").append(size + i).append('\n')
+                    .append("push constant ").append(500 + i).append("\npop static ").append(i).append('\n');
+        }
+        for (int i = 0; i < 8; i++) {
+            fill.append("push constant ").append(400 + i).append("\npop temp ").append(i).append('\n');
+        }
+        fill.append("push constant 0\nreturn\n");
+        WorkloadGenerator.write(Map.of("Sys.vm", sys.toString(), "Segments.vm", fill.toString()), Paths.get(program));
+
+        for (Set<Optimization> optimizations : List.of(EnumSet.noneOf(Optimization.class), EnumSet.of(Optimization.PEEPHOLE),
+                EnumSet.of(Optimization.CACHE_TOP), EnumSet.of(Optimization.PEEPHOLE, Optimization.CACHE_TOP))) {
+            Map<String, Integer> result = run(assemble(program, optimizations));
+
+            Assertions.assertEquals(3000, (int) result.get("R3"), optimizations.toString());
+            Assertions.assertEquals(4000, (int) result.get("R4"), optimizations.toString());
+            for (int i = 0; i < size; i++) {
+                Assertions.assertEquals(200 + i, (int) result.get("RAM[" + (3000 + i) + "]"), "this " + i + " with " + optimizations);
+                Assertions.assertEquals(200 + i, (int) result.get("RAM[" + (4000 + i) + "]"), "that " + i + " with " + optimizations);
+                Assertions.assertEquals(300 + i, (int) result.get("RAM[" + (4000 + size + i) + "]"), "argument " + i + " with " + optimizations);
+                Assertions.assertEquals(500 + i, (int) result.get("Segments." + i), "static " + i + " with " + optimizations);
+            }
+            for (int i = 0; i < 8; i++) {
+                Assertions.assertEquals(400 + i, (int) result.get("R" + (5 + i)), "temp " + i + " with " + optimizations);
+            }
+        }
+
+        // First two locations are reached from the pointer alone
+        String assembly = translate(program, EnumSet.noneOf(Optimization.class), Inliner.DEFAULT_MAX_SIZE);
+        Assertions.assertTrue(assembly.contains("// push local 0\n@1\nA=M\nD=M\n"));
+        Assertions.assertTrue(assembly.contains("// push argument 1\n@2\nA=M+1\nD=M\n"));
+
+        // Every index takes the shorter of stepping A from the pointer and adding the index to it through D.
+        // Push adds it in 5 instructions, pop in 12 as D holds the value
+        for (SegmentType segment : List.of(SegmentType.S_LOCAL, SegmentType.S_ARGUMENT, SegmentType.S_THIS, SegmentType.S_THAT)) {
+            for (int i = 0; i < size; i++) {
+                int steps = Math.max(1, i);
+                Assertions.assertEquals(Math.min(2 + steps, 5) + 4, instructions(pushPop(CommandType.C_PUSH, segment, i)), "push " + segment.label + " " + i);
+                Assertions.assertEquals(Math.min(5 + steps, 12), instructions(pushPop(CommandType.C_POP, segment, i)), "pop " + segment.label + " " + i);
+            }
+        }
+        for (int i = 1; i < size; i++) {
+            Assertions.assertEquals(Math.min(2 + i, 5) + 4, instructions(stack(CommandType.C_PUSH, i)), "push stack " + i);
+        }
+    }
+
+    @Test
+    @DisplayName("Files of a folder translated in parallel same as read one after another")
+    public void testParallelFiles() throws Exception {
+        for (String program : programs) {
+            // Standard input is read by a single parser, with static variables named after the class of the function
+            StringBuilder concatenated = new StringBuilder();
+            for (File file : Parser.vmFiles(program)) {
+                concatenated.append(Files.readString(file.toPath())).append('\n');
+            }
+
+            for (Set<Optimization> optimizations : List.of(EnumSet.noneOf(Optimization.class), EnumSet.allOf(Optimization.class))) {
+                String assembly = translate(program, optimizations, Inliner.DEFAULT_MAX_SIZE);
+                Assertions.assertEquals(assembly, translate(program, optimizations, Inliner.DEFAULT_MAX_SIZE), program + " translated again");
+
+                // Every file counts its labels from 0, its name keeps them apart
+                Set<String> labels = new HashSet<>();
+                for (String line : assembly.split("\n")) {
+                    if (line.startsWith("(")) {
+                        Assertions.assertTrue(labels.add(line), line + " defined twice in " + program);
+                    }
+                }
+
+                ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+                VMTranslator.translate(new ByteArrayInputStream(concatenated.toString().getBytes(StandardCharsets.UTF_8)),
+                        streamed, optimizations);
+                Assertions.assertEquals(run(HackAssembler.assemble(streamed.toString(StandardCharsets.UTF_8))),
+                        run(HackAssembler.assemble(assembly)), program + " with " + optimizations);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Functions reachable from Sys.init and the first function")
+    public void testDeadFunctions() throws Exception {
+        CallGraph callGraph = new CallGraph();
+        List<Command> commands = List.of(
+                constant(1),
+                function("Main.main"), call("Main.used"), returnCommand(),
+                function("Main.used"), call("Main.used"), returnCommand(),
+                function("Main.unused"), call("Main.main"), returnCommand());
+        callGraph.add(commands);
+
+        // Without Sys.init every function is kept
+        Assertions.assertNull(callGraph.reachable());
+        Assertions.assertSame(commands, CallGraph.keep(commands, null));
+
+        // First function is kept, as the program falls into it without a bootstrap call
+        callGraph.add(List.of(function("Sys.init"), call("Main.used"), returnCommand()));
+        Set<String> reachable = callGraph.reachable();
+        Assertions.assertEquals(Set.of("Sys.init", "Main.main", "Main.used"), reachable);
+
+        // Commands before the first function stay
+        Assertions.assertEquals(List.of(constant(1),
+                function("Main.main"), call("Main.used"), returnCommand(),
+                function("Main.used"), call("Main.used"), returnCommand()), CallGraph.keep(commands, reachable));
+
+        final String program = outputDir + "Dead";
+        WorkloadGenerator.write(Map.of(
+                "Sys.vm", "function Sys.init 0\npush constant 3\ncall Dead.used 1\npop static 0\nlabel HALT\ngoto HALT\n",
+                "Dead.vm", "function Dead.used 0\npush argument 0\nreturn\nfunction Dead.unused 0\npush constant 7\nreturn\n"),
+                Paths.get(program));
+
+        String assembly = translate(program, EnumSet.of(Optimization.DEAD_FUNCTIONS), Inliner.DEFAULT_MAX_SIZE);
+        Assertions.assertTrue(assembly.contains("(Dead.used)"));
+        Assertions.assertFalse(assembly.contains("(Dead.unused)"));
+        Assertions.assertEquals(3, (int) run(HackAssembler.assemble(assembly)).get("Sys.0"));
+
+        assertSameResults(EnumSet.of(Optimization.DEAD_FUNCTIONS));
+        assertSmaller(program, EnumSet.of(Optimization.DEAD_FUNCTIONS));
+    }
+
+    @Test
+    @DisplayName("Inlining small leaf functions onto the caller's stack")
+    public void testInline() throws Exception {
+        List<Command> functions = List.of(
+                function("P.f", 1), pushPop(CommandType.C_PUSH, SegmentType.S_ARGUMENT, 1), pushPop(CommandType.C_POP, SegmentType.S_LOCAL, 0),
+                pushPop(CommandType.C_PUSH, SegmentType.S_LOCAL, 0), pushPop(CommandType.C_PUSH, SegmentType.S_ARGUMENT, 0),
+                arithmetic(ArithmeticType.A_SUB), returnCommand(),
+                function("P.caller", 0), constant(1), constant(2), call("P.f", 2), returnCommand());
+
+        // Arguments and locals become values counted from the top of the stack, which grows as the body runs
+        Inliner inliner = new Inliner(5);
+        inliner.add(functions);
+        Assertions.assertEquals(List.of(constant(0), stack(CommandType.C_PUSH, 2), stack(CommandType.C_POP, 1),
+                stack(CommandType.C_PUSH, 1), stack(CommandType.C_PUSH, 4), arithmetic(ArithmeticType.A_SUB),
+                stack(CommandType.C_POP, 1), stack(CommandType.C_POP, 1), stack(CommandType.C_POP, 1)),
+                inliner.inline(List.of(call("P.f", 2))));
+
+        // Functions with calls are not inlined, nor calls with fewer arguments than the body uses
+        Assertions.assertEquals(List.of(call("P.caller", 0), call("P.f", 1)), inliner.inline(List.of(call("P.caller", 0), call("P.f", 1))));
+
+        // Body longer than the limit
+        Inliner small = new Inliner(4);
+        small.add(functions);
+        Assertions.assertEquals(List.of(call("P.f", 2)), small.inline(List.of(call("P.f", 2))));
+
+        final String program = outputDir + "Inline";
+        WorkloadGenerator.write(Map.of(
+                "Sys.vm", """
+                        function Sys.init 0
+                        push constant 10
+                        push constant 3
+                        call P.f 2
+                        pop static 0
+                        push constant 2500
+                        pop pointer 1
+                        push constant 42
+                        pop that 0
+                        push constant 4000
+                        pop pointer 1
+                        push constant 2500
+                        call P.get 1
+                        pop static 1
+                        push constant 5
+                        pop that 0
+                        label HALT
+                        goto HALT
+                        """,
+                "P.vm", """
+                        function P.f 1
+                        push argument 1
+                        pop local 0
+                        push local 0
+                        push argument 0
+                        sub
+                        return
+                        function P.get 0
+                        push argument 0
+                        pop pointer 1
+                        push that 0
+                        return
+                        """), Paths.get(program));
+
+        String assembly = translate(program, EnumSet.of(Optimization.INLINE), Inliner.DEFAULT_MAX_SIZE);
+        Assertions.assertFalse(assembly.contains("// call function P."));
+        Map<String, Integer> result = run(HackAssembler.assemble(assembly));
+
+        // Pointer changed by the body is restored
+        Assertions.assertEquals(-7, (int) result.get("Sys.0"));
+        Assertions.assertEquals(42, (int) result.get("Sys.1"));
+        Assertions.assertEquals(4000, (int) result.get("R4"));
+        Assertions.assertEquals(5, (int) result.get("RAM[4000]"));
+        Assertions.assertEquals(run(assemble(program, EnumSet.noneOf(Optimization.class))), result);
+
+        assertSameResults(EnumSet.of(Optimization.INLINE));
+    }
+
+    @Test
+    @DisplayName("Every combination of optimizations")
+    public void testAllCombinations() throws Exception {
+        Optimization[] all = Optimization.values();
+
+        for (String program : programs) {
+            Map<String, Integer> expected = run(assemble(program, EnumSet.noneOf(Optimization.class)));
+
+            for (int mask = 1; mask < 1 << all.length; mask++) {
+                Set<Optimization> optimizations = EnumSet.noneOf(Optimization.class);
+                for (int i = 0; i < all.length; i++) {
+                    if ((mask & 1 << i) != 0) {
+                        optimizations.add(all[i]);
+                    }
+                }
+
+                Assertions.assertEquals(expected, run(assemble(program, optimizations)), program + " with " + optimizations);
+            }
+        }
+    }
+
+    @AfterAll
+    // Delete temp folder of generated program
+    public static void flushTestFolder() throws IOException {
+        Files.walk(Paths.get(outputDir))
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    /**
+     * Checks that commands written through Peephole give the same code as the expected calls of Code
+     */
+    public static void assertPeephole(List<Command> commands, Consumer<Code> expected) {
+        Code code = new Code();
+        Peephole peephole = new Peephole(code);
+        commands.forEach(peephole::write);
+        peephole.flush();
+
+        Code expectedCode = new Code();
+        expected.accept(expectedCode);
+        Assertions.assertEquals(expectedCode.output().toString(), code.output().toString(), commands.toString());
+    }
+
+    public static Command constant(int value) {
+        return pushPop(CommandType.C_PUSH, SegmentType.S_CONSTANT, value);
+    }
+
+    public static Command pushPop(CommandType type, SegmentType segment, int index) {
+        return Command.pushPop(type, segment, index, "Main.vm");
+    }
+
+    public static Command arithmetic(ArithmeticType operation) {
+        return Command.arithmetic(operation, "Main.vm");
+    }
+
+    public static Command named(CommandType type, String name) {
+        return Command.named(type, name, "Main.vm");
+    }
+
+    public static Command function(String name) {
+        return function(name, 0);
+    }
+
+    public static Command function(String name, int nVars) {
+        return Command.function(CommandType.C_FUNCTION, name, nVars, "Main.vm");
+    }
+
+    public static Command call(String name) {
+        return call(name, 0);
+    }
+
+    public static Command call(String name, int nArgs) {
+        return Command.function(CommandType.C_CALL, name, nArgs, "Main.vm");
+    }
+
+    /**
+     * Push or pop of the value at the index from the top of the stack, as Inliner makes them
+     */
+    public static Command stack(CommandType type, int index) {
+        return Command.stack(type, index, "Main.vm");
+    }
+
+    public static Command returnCommand() {
+        return Command.named(CommandType.C_RETURN, null, "Main.vm");
+    }
+
+    /**
+     * Number of instructions in the code of the command
+     */
+    public static int instructions(Command command) {
+        Code code = new Code();
+        code.write(command);
+        return (int) code.output().toString().lines().filter(line -> !line.startsWith("//")).count();
+    }
+
+    /**
+     * VM code pushing the number, which may be negative
+     */
+    public static String push(int value) {
+        return value < 0 ? "push constant " + -value + "\nneg\n" : "push constant " + value + "\n";
+    }
+
+    /**
+     * VM code of if-goto on the value on top of the stack, storing 2 in the static if it jumps and 1 if it does not
+     */
+    public static void appendJumpResult(StringBuilder vm, String label, int index) {
+        vm.append("if-goto TAKEN_").append(label).append('\n')
+                .append("push constant 1\n")
+                .append("goto END_").append(label).append('\n')
+                .append("label TAKEN_").append(label).append('\n')
+                .append("push constant 2\n")
+                .append("label END_").append(label).append('\n')
+                .append("pop static ").append(index).append('\n');
+    }
+
+    /**
+     * Checks that every program leaves the same results translated with the optimizations as without
+     */
+    public static void assertSameResults(Set<Optimization> optimizations) throws Exception {
+        for (String program : programs) {
+            Map<String, Integer> expected = run(assemble(program, EnumSet.noneOf(Optimization.class)));
+            Map<String, Integer> actual = run(assemble(program, optimizations));
+
+            Assertions.assertEquals(expected, actual, program + " with " + optimizations);
+        }
+    }
+
+    /**
+     * Checks that the program takes less ROM translated with the optimizations than without
+     */
+    public static void assertSmaller(String program, Set<Optimization> optimizations) throws Exception {
+        int unoptimized = assemble(program, EnumSet.noneOf(Optimization.class)).words.length;
+        int optimized = assemble(program, optimizations).words.length;
+
+        Assertions.assertTrue(optimized < unoptimized, program + " takes " + optimized + " words, " + unoptimized + " before");
+    }
+
+    /**
+     * Machine code of the VM program translated with the optimizations
+     */
+    public static RomImage assemble(String program, Set<Optimization> optimizations) throws Exception {
+        return HackAssembler.assemble(translate(program, optimizations, Inliner.DEFAULT_MAX_SIZE));
+    }
+
+    public static String translate(String program, Set<Optimization> optimizations, int inlineSize) throws Exception {
+        ByteArrayOutputStream assembly = new ByteArrayOutputStream();
+        VMTranslator.translate(program, assembly, optimizations, inlineSize);
+        return assembly.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Runs the program to its end. Returns memory that does not depend on how the program was translated:
+     * pointers and temp, static variables by name and everything from the heap up.
+     * R13 to R15, the stack above SP and addresses of static variables may differ
+     */
+    public static Map<String, Integer> run(RomImage rom) {
+        HackEmulator emulator = new HackEmulator();
+        Assertions.assertTrue(emulator.run(rom.words), "program did not end");
+
+        Map<String, Integer> memory = new TreeMap<>();
+        for (int address = 0; address <= 12; address++) {
+            memory.put("R" + address, emulator.get(address));
+        }
+
+        // Static variables are named File.index, labels the translator makes have other characters in them
+        for (int id = 0; id < rom.symbolTable.size(); id++) {
+            String name = rom.symbolTable.getNameById(id);
+            int address = rom.symbolTable.getAddressById(id);
+
+            if (name.matches("[A-Za-z0-9]+\\.\\d+") && address >= 16 && address < 256 && emulator.get(address) != 0) {
+                memory.put(name, emulator.get(address));
+            }
+        }
+
+        for (int address = 2048; address < 16384; address++) {
+            if (emulator.get(address) != 0) {
+                memory.put("RAM[" + address + "]", emulator.get(address));
+            }
+        }
+        return memory;
+    }
+}
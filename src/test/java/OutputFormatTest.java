@@ -0,0 +1,119 @@
+import nand.assembler.HackAssembler;
+import nand.assembler.process.OutputFormat;
+import nand.assembler.process.RomWriter;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+
+
+public class OutputFormatTest {
+    public static final String outputDir = "./src/test/tempFormats/";
+
+    // Assembles to 0x0002, 0xEC10, 0x0002, 0xEA87
+    public static final String program = """
+            @2
+            D=A
+            (LOOP)
+            @LOOP
+            0;JMP
+            """;
+
+    @BeforeAll
+    // Create temp folder for outputted files
+    public static void setUpTestFolder() throws IOException {
+        new File(outputDir).mkdirs();
+        Files.writeString(Paths.get(outputDir, "Loop.asm"), program);
+    }
+
+    @Test
+    @DisplayName("Writing hack text format")
+    public void testText() throws Exception {
+        Assertions.assertEquals("""
+                0000000000000010
+                1110110000010000
+                0000000000000010
+                1110101010000111
+                """, assembleTo(OutputFormat.TEXT));
+    }
+
+    @Test
+    @DisplayName("Writing raw big-endian words")
+    public void testBinary() throws Exception {
+        HackAssembler.translate(outputDir + "Loop.asm", outputDir + "Loop.bin", OutputFormat.BINARY);
+
+        Assertions.assertArrayEquals(new byte[] {0x00, 0x02, (byte) 0xEC, 0x10, 0x00, 0x02, (byte) 0xEA, (byte) 0x87},
+                Files.readAllBytes(Paths.get(outputDir, "Loop.bin")));
+    }
+
+    @Test
+    @DisplayName("Writing Intel HEX records")
+    public void testIntelHex() throws Exception {
+        Assertions.assertEquals("""
+                :080000000002EC100002EA8787
+                :00000001FF
+                """, assembleTo(OutputFormat.INTEL_HEX));
+    }
+
+    @Test
+    @DisplayName("Writing Intel HEX with extended linear address records past every 64K bytes")
+    public void testIntelHexExtendedAddress() {
+        short[] words = new short[70000];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = (short) i;
+        }
+
+        String[] lines = StandardCharsets.US_ASCII.decode(new RomWriter().encode(words, OutputFormat.INTEL_HEX))
+                .toString().split("\n");
+
+        // 8750 data records of 16 bytes, 2 extended linear address records and the end of file record
+        Assertions.assertEquals(8753, lines.length);
+        Assertions.assertEquals(":1000000000000001000200030004000500060007D4", lines[0]);
+        Assertions.assertEquals(":10FFF0007FF87FF97FFA7FFB7FFC7FFD7FFE7FFF2D", lines[4095]);
+        Assertions.assertEquals(":020000040001F9", lines[4096]);
+        Assertions.assertEquals(":1000000080008001800280038004800580068007D4", lines[4097]);
+        Assertions.assertEquals(":020000040002F8", lines[8193]);
+        Assertions.assertEquals(":1000000000000001000200030004000500060007D4", lines[8194]);
+        Assertions.assertEquals(":1022D00011681169116A116B116C116D116E116F1A", lines[8751]);
+        Assertions.assertEquals(":00000001FF", lines[8752]);
+    }
+
+    @Test
+    @DisplayName("Writing Logisim memory image")
+    public void testLogisim() throws Exception {
+        Assertions.assertEquals("""
+                v2.0 raw
+                0002 EC10 0002 EA87
+                """, assembleTo(OutputFormat.LOGISIM));
+
+        // Eight words on a line
+        short[] words = new short[9];
+        words[8] = -1;
+        Assertions.assertEquals("""
+                v2.0 raw
+                0000 0000 0000 0000 0000 0000 0000 0000
+                FFFF
+                """, StandardCharsets.US_ASCII.decode(new RomWriter().encode(words, OutputFormat.LOGISIM)).toString());
+    }
+
+    @AfterAll
+    // Delete temp folder of output files
+    public static void flushTestFolder() throws IOException {
+        Files.walk(Paths.get(outputDir))
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    private static String assembleTo(OutputFormat format) throws Exception {
+        final String outputFile = outputDir + "Loop." + format.label;
+
+        HackAssembler.translate(outputDir + "Loop.asm", outputFile, format);
+        return Files.readString(Paths.get(outputFile));
+    }
+}
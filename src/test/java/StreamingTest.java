@@ -0,0 +1,166 @@
+import nand.Main;
+import nand.vm_translator.VMTranslator;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+
+
+public class StreamingTest {
+    public static final String outputDir = "./src/test/tempStreams/";
+
+    public static final String vmProgram = """
+            function Main.main 1
+            push constant 7
+            pop static 0
+            push static 0
+            push constant 2
+            call Main.double 1
+            pop local 0
+            label LOOP
+            goto LOOP
+            function Main.double 0
+            push argument 0
+            push argument 0
+            add
+            return
+            """;
+
+    @BeforeAll
+    // Create temp folder for outputted files
+    public static void setUpTestFolder() {
+        new File(outputDir).mkdirs();
+    }
+
+    @Test
+    @DisplayName("Assembling from standard input to standard output")
+    public void testAssembler() {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        String output = runMain("""
+                @2
+                D=A
+                (LOOP)
+                @LOOP
+                0;JMP
+                """, log, "assembler", "-i", "-", "-o", "-");
+
+        Assertions.assertEquals("""
+                0000000000000010
+                1110110000010000
+                0000000000000010
+                1110101010000111
+                """, output);
+
+        // Messages go to standard error, as standard output is the program
+        Assertions.assertTrue(log.toString().contains("Output in standard output"), log.toString());
+    }
+
+    @Test
+    @DisplayName("Translating VM code from standard input to standard output")
+    public void testVmTranslator() throws Exception {
+        final String vmFile = outputDir + "Main.vm";
+        final String asmFile = outputDir + "Main.asm";
+
+        // Without file names, statics are named after the class of the function
+        Files.writeString(Paths.get(vmFile), vmProgram);
+        VMTranslator.translate(vmFile, asmFile);
+
+        String output = runMain(vmProgram, new ByteArrayOutputStream(), "vmTranslator", "-i", "-", "-o", "-");
+        Assertions.assertEquals(Files.readString(Paths.get(asmFile)), output);
+    }
+
+    @Test
+    @DisplayName("Chaining VM translator and assembler through streams")
+    public void testChain() throws Exception {
+        final String vmFile = outputDir + "Chain.vm";
+        final String hackFile = outputDir + "Chain.hack";
+        Files.writeString(Paths.get(vmFile), vmProgram.replace("Main.", "Chain."));
+
+        String assembly = runMain("", new ByteArrayOutputStream(), "vmTranslator", "-i", vmFile, "-o", "-");
+        runMain(assembly, new ByteArrayOutputStream(), "assembler", "-i", "-", "-o", hackFile);
+
+        String output = runMain(assembly, new ByteArrayOutputStream(), "assembler", "-i", "-", "-o", "-");
+        Assertions.assertEquals(Files.readString(Paths.get(hackFile)), output);
+        Assertions.assertTrue(output.length() > 0);
+    }
+
+    @Test
+    @DisplayName("Standard streams left open after translation, also when it fails")
+    public void testStandardStreamsOpen() {
+        for (String assembly : List.of("@2\nD=A\n", "@99999\n")) {
+            boolean[] closed = new boolean[2];
+            InputStream input = new ByteArrayInputStream(assembly.getBytes(StandardCharsets.UTF_8)) {
+                @Override
+                public void close() {
+                    closed[0] = true;
+                }
+            };
+            ByteArrayOutputStream output = new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    closed[1] = true;
+                }
+            };
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+            InputStream stdin = System.in;
+            PrintStream stdout = System.out;
+            PrintStream stderr = System.err;
+            try {
+                System.setIn(input);
+                System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+                System.setErr(new PrintStream(log, true, StandardCharsets.UTF_8));
+                Main.main(new String[] {"assembler", "-i", "-", "-o", "-"});
+                Main.main(new String[] {"vmTranslator", "-i", "-", "-o", "-"});
+            } finally {
+                System.setIn(stdin);
+                System.setOut(stdout);
+                System.setErr(stderr);
+            }
+
+            Assertions.assertFalse(closed[0], assembly);
+            Assertions.assertFalse(closed[1], assembly);
+        }
+    }
+
+    @AfterAll
+    // Delete temp folder of output files
+    public static void flushTestFolder() throws IOException {
+        Files.walk(Paths.get(outputDir))
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    /**
+     * Runs Main with the input as standard input, returning what it wrote to standard output
+     */
+    public static String runMain(String input, ByteArrayOutputStream log, String... args) {
+        InputStream stdin = System.in;
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        try {
+            System.setIn(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+            System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+            System.setErr(new PrintStream(log, true, StandardCharsets.UTF_8));
+            Main.main(args);
+        } finally {
+            System.setIn(stdin);
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
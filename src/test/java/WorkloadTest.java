@@ -0,0 +1,78 @@
+import nand.assembler.HackAssembler;
+import nand.assembler.RomImage;
+import nand.jack_compiler.JackCompiler;
+import nand.vm_translator.VMTranslator;
+import nand.workload.WorkloadGenerator;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+
+
+public class WorkloadTest {
+    public static final String outputDir = "./src/test/tempWorkload/";
+    public static final long seed = 42;
+
+    @BeforeAll
+    // Create temp folder for generated programs
+    public static void setUpTestFolder() {
+        new File(outputDir).mkdirs();
+    }
+
+    @Test
+    @DisplayName("Same seed generates the same programs")
+    public void testSeed() {
+        Assertions.assertEquals(new WorkloadGenerator(seed).assembly(1000, 100), new WorkloadGenerator(seed).assembly(1000, 100));
+        Assertions.assertEquals(new WorkloadGenerator(seed).vmProgram(6, 4, 3), new WorkloadGenerator(seed).vmProgram(6, 4, 3));
+        Assertions.assertNotEquals(new WorkloadGenerator(seed).jackProgram(6, 4, 3), new WorkloadGenerator(seed + 1).jackProgram(6, 4, 3));
+    }
+
+    @Test
+    @DisplayName("Assembling generated program larger than the ROM")
+    public void testLargeAssembly() throws Exception {
+        RomImage rom = HackAssembler.assemble(new WorkloadGenerator(seed).assembly(100000, 5000));
+
+        // Halt loop comes after the requested instructions
+        Assertions.assertEquals(100002, rom.words.length);
+        Assertions.assertTrue(rom.symbolTable.containsVariable("v_0"));
+    }
+
+    @Test
+    @DisplayName("Translating and assembling generated VM program")
+    public void testVmProgram() throws Exception {
+        final Path vmDir = Paths.get(outputDir, "Vm");
+        final String asmFile = outputDir + "Vm.asm";
+
+        WorkloadGenerator.write(new WorkloadGenerator(seed).vmProgram(6, 8, 3), vmDir);
+        VMTranslator.translate(vmDir.toString(), asmFile);
+
+        Assertions.assertTrue(HackAssembler.assemble(Files.readString(Paths.get(asmFile))).words.length > 0);
+    }
+
+    @Test
+    @DisplayName("Compiling generated Jack program down to Hack")
+    public void testJackProgram() throws Exception {
+        final Path jackDir = Paths.get(outputDir, "Jack");
+        final String asmFile = outputDir + "Jack.asm";
+
+        WorkloadGenerator.write(new WorkloadGenerator(seed).jackProgram(8, 6, 4), jackDir);
+        JackCompiler.translate(jackDir.toString());
+        Assertions.assertTrue(Files.exists(jackDir.resolve("Gena.vm")));
+
+        VMTranslator.translate(jackDir.toString(), asmFile);
+        Assertions.assertTrue(HackAssembler.assemble(Files.readString(Paths.get(asmFile))).words.length > 0);
+    }
+
+    @AfterAll
+    // Delete temp folder of generated programs
+    public static void flushTestFolder() throws IOException {
+        Files.walk(Paths.get(outputDir))
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+}